@@ -67,6 +67,7 @@
 import de.bluecolored.bluemap.common.config.MapConfig;
 import de.bluecolored.bluemap.common.config.storage.StorageConfig;
 import de.bluecolored.bluemap.common.plugin.Plugin;
+import de.bluecolored.bluemap.common.rendermanager.ChunkPrefetcher;
 import de.bluecolored.bluemap.common.serverinterface.ServerInterface;
 import de.bluecolored.bluemap.common.serverinterface.ServerWorld;
 import de.bluecolored.bluemap.core.MinecraftVersion;
@@ -209,6 +210,8 @@ private synchronized void loadWorldsAndMaps() throws InterruptedException {
         maps = new HashMap<>();
         worlds = new HashMap<>();
 
+        ChunkPrefetcher.global().setPrefetchDepth(configs.getCoreConfig().getPrefetchDepth());
+
         for (var entry : configs.getMapConfigs().entrySet()) {
             try {
                 loadMapConfig(entry.getKey(), entry.getValue());
@@ -257,12 +260,16 @@ private synchronized void loadMapConfig(String id, MapConfig mapConfig) throws C
         if (world == null) {
             try {
                 Logger.global.logInfo("Loading world '" + worldId + "' (" + worldFolder.toAbsolutePath().normalize() + ")...");
+                long chunkCacheMemory = configs.getCoreConfig().resolveChunkCacheMemory();
+                Path chunkSnapshotFolder = configs.getCoreConfig().isChunkSnapshotCache() ?
+                        configs.getCoreConfig().getData().resolve("chunk-snapshots").resolve(worldId) :
+                        null;
                 if (mapConfig.getWorldType() == WorldType.MCREGION)
-                	world = new MCRWorld(worldFolder, mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData());
+                	world = new MCRWorld(worldFolder, mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData(), chunkCacheMemory);
                 else if (mapConfig.getWorldType() == WorldType.DAT)
-                    world = new DatWorld(worldFolder, mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData());
+                    world = new DatWorld(worldFolder, mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData(), chunkCacheMemory, chunkSnapshotFolder);
                 else
-                    world = new MCAWorld(worldFolder, mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData());
+                    world = new MCAWorld(worldFolder, mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData(), chunkCacheMemory, chunkSnapshotFolder);
                 
                 worlds.put(worldId, world);
             } catch (IOException ex) {
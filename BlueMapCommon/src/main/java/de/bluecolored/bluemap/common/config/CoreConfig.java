@@ -38,6 +38,14 @@ public class CoreConfig {
 
     private int renderThreadCount = 1;
 
+    private int prefetchDepth = 8;
+
+    private int chunkCacheSize = 128;
+
+    private boolean chunkSnapshotCache = false;
+
+    private int fileWatcherDelay = 10;
+
     private boolean metrics = true;
 
     private Path data = Path.of("bluemap");
@@ -59,6 +67,36 @@ public int resolveRenderThreadCount() {
         return Math.max(Runtime.getRuntime().availableProcessors() + renderThreadCount, 1);
     }
 
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * The maximum memory in MiB that the chunk-cache of each world is allowed to use
+     */
+    public int getChunkCacheSize() {
+        return chunkCacheSize;
+    }
+
+    public long resolveChunkCacheMemory() {
+        return Math.max(chunkCacheSize, 1) * 1024L * 1024L;
+    }
+
+    public boolean isChunkSnapshotCache() {
+        return chunkSnapshotCache;
+    }
+
+    /**
+     * The time in seconds that a region has to stay unmodified before the file-watcher schedules its update
+     */
+    public int getFileWatcherDelay() {
+        return fileWatcherDelay;
+    }
+
+    public long resolveFileWatcherDelay() {
+        return Math.max(fileWatcherDelay, 0) * 1000L;
+    }
+
     public boolean isMetrics() {
         return metrics;
     }
@@ -77,6 +77,8 @@ public class MapConfig implements MapSettings {
 
     private boolean saveHiresLayer = true;
 
+    private boolean greedyMeshing = false;
+
     private String storage = "file";
 
     private boolean ignoreMissingLightData = false;
@@ -169,6 +171,11 @@ public boolean isSaveHiresLayer() {
         return saveHiresLayer;
     }
 
+    @Override
+    public boolean isGreedyMeshing() {
+        return greedyMeshing;
+    }
+
     public String getStorage() {
         return storage;
     }
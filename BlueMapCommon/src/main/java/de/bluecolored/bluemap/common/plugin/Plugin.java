@@ -542,7 +542,8 @@ public synchronized void startWatchingMap(BmMap map) {
         stopWatchingMap(map);
 
         try {
-            RegionFileWatchService watcher = new RegionFileWatchService(renderManager, map, false);
+            RegionFileWatchService watcher = new RegionFileWatchService(renderManager, map, false,
+                    getConfigs().getCoreConfig().resolveFileWatcherDelay());
             watcher.start();
             regionFileWatchServices.put(map.getId(), watcher);
         } catch (IOException ex) {
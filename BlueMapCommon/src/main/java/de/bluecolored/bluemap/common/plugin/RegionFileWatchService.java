@@ -30,20 +30,38 @@
 import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.map.WorldChangeIndex;
 import de.bluecolored.bluemap.core.util.FileHelper;
+import de.bluecolored.bluemap.core.world.Region;
+import de.bluecolored.bluemap.core.world.World;
 
 import java.io.IOException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Watches the region-folder (and all its sub-folders that can contain region-files) of a map's world and schedules a
+ * {@link WorldRegionRenderTask} for the changed chunks of each region, once its files have not been modified for the configured delay.
+ */
 public class RegionFileWatchService extends Thread {
 
+    public static final long DEFAULT_UPDATE_DELAY = TimeUnit.SECONDS.toMillis(10);
+
     private final BmMap map;
+    private final World world;
     private final RenderManager renderManager;
     private final WatchService watchService;
+    private final Path regionFolder;
+    private final long updateDelay;
+
+    private final Map<WatchKey, Path> watchedFolders;
 
     private boolean verbose;
     private volatile boolean closed;
@@ -54,18 +72,28 @@ public class RegionFileWatchService extends Thread {
     private final Map<Vector2i, TimerTask> scheduledUpdates;
 
     public RegionFileWatchService(RenderManager renderManager, BmMap map, boolean verbose) throws IOException {
+        this(renderManager, map, verbose, DEFAULT_UPDATE_DELAY);
+    }
+
+    /**
+     * @param updateDelay the time in milliseconds that a region has to stay unmodified before its update is scheduled
+     */
+    public RegionFileWatchService(RenderManager renderManager, BmMap map, boolean verbose, long updateDelay) throws IOException {
         this.renderManager = renderManager;
         this.map = map;
+        this.world = map.getWorld();
         this.verbose = verbose;
+        this.updateDelay = Math.max(updateDelay, 0);
         this.closed = false;
         this.scheduledUpdates = new HashMap<>();
+        this.watchedFolders = new HashMap<>();
 
-        Path folder = map.getWorld().getSaveFolder().resolve("region");
-        FileHelper.createDirectories(folder);
+        this.regionFolder = world.getRegionFolder();
+        FileHelper.createDirectories(regionFolder);
 
-        this.watchService = folder.getFileSystem().newWatchService();
+        this.watchService = regionFolder.getFileSystem().newWatchService();
 
-        folder.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        registerFolders(regionFolder, false);
     }
 
     @Override
@@ -75,21 +103,34 @@ public void run() {
         try {
             while (!closed) {
                 WatchKey key = this.watchService.take();
+                Path folder = watchedFolders.get(key);
 
                 for (WatchEvent<?> event : key.pollEvents()) {
                     WatchEvent.Kind<?> kind = event.kind();
 
-                    if (kind == StandardWatchEventKinds.OVERFLOW) continue;
+                    // events got lost, so we need to check all regions for changes
+                    if (kind == StandardWatchEventKinds.OVERFLOW) {
+                        rescan();
+                        continue;
+                    }
 
                     Object fileObject = event.context();
-                    if (!(fileObject instanceof Path)) continue;
-                    Path file = (Path) fileObject;
+                    if (folder == null || !(fileObject instanceof Path)) continue;
+                    Path file = folder.resolve((Path) fileObject);
 
-                    String regionFileName = file.toFile().getName();
-                    updateRegion(regionFileName);
+                    // new sub-folders (e.g. chunk-folders of alpha-worlds) need to be watched as well
+                    if (kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file)) {
+                        registerFolders(file, true);
+                        continue;
+                    }
+
+                    updateFile(file);
                 }
 
-                if (!key.reset()) return;
+                if (!key.reset()) {
+                    watchedFolders.remove(key);
+                    if (regionFolder.equals(folder)) return;
+                }
             }
         } catch ( ClosedWatchServiceException ignore) {
         } catch (InterruptedException iex) {
@@ -102,37 +143,118 @@ public void run() {
         }
     }
 
-    private synchronized void updateRegion(String regionFileName) {
-        if (!regionFileName.endsWith(".mca")) return;
-        if (!regionFileName.startsWith("r.")) return;
-
+    /**
+     * Registers the folder and all its sub-folders to the watch-service.
+     * If updateFiles is true, an update is scheduled for all files that are already in those folders.
+     */
+    private void registerFolders(Path root, boolean updateFiles) {
         try {
-            String[] filenameParts = regionFileName.split("\\.");
-            if (filenameParts.length < 3) return;
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    // only watch folders that can contain region-files (e.g. not the players-folder of an alpha-world)
+                    if (!dir.equals(regionFolder) && !world.isRegionSubFolder(dir)) return FileVisitResult.SKIP_SUBTREE;
 
-            int rX = Integer.parseInt(filenameParts[1]);
-            int rZ = Integer.parseInt(filenameParts[2]);
-            Vector2i regionPos = new Vector2i(rX, rZ);
+                    WatchKey key = dir.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY
+                    );
+                    watchedFolders.put(key, dir);
+                    return FileVisitResult.CONTINUE;
+                }
 
-            // we only want to start the render when there were no changes on a file for 10 seconds
-            TimerTask task = scheduledUpdates.remove(regionPos);
-            if (task != null) task.cancel();
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (updateFiles) updateFile(file);
+                    return FileVisitResult.CONTINUE;
+                }
 
-            task = new TimerTask() {
                 @Override
-                public void run() {
-                    synchronized (RegionFileWatchService.this) {
-                        WorldRegionRenderTask task = new WorldRegionRenderTask(map, regionPos);
-                        scheduledUpdates.remove(regionPos);
-                        renderManager.scheduleRenderTask(task);
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+            Logger.global.logWarning("Failed to watch folder '" + root + "' for map '" + map.getId() + "': " + ex);
+        }
+    }
 
-                        if (verbose) Logger.global.logInfo("Scheduled update for region-file: " + regionPos + " (Map: " + map.getId() + ")");
-                    }
+    private void rescan() {
+        Logger.global.logDebug("Region-file watch-service for map '" + map.getId() + "' missed some events, checking all regions for changes...");
+
+        // folders might have been created without us noticing
+        registerFolders(regionFolder, false);
+
+        for (Vector2i regionPos : world.listRegions()) {
+            scheduleRegionUpdate(regionPos);
+        }
+    }
+
+    private void updateFile(Path file) {
+        Vector2i regionPos = world.getRegionPosition(file);
+        if (regionPos == null) return;
+
+        scheduleRegionUpdate(regionPos);
+    }
+
+    private synchronized void scheduleRegionUpdate(Vector2i regionPos) {
+        if (closed) return;
+
+        // we only want to start the render when there were no changes on a region for some time
+        TimerTask task = scheduledUpdates.remove(regionPos);
+        if (task != null) task.cancel();
+
+        task = new TimerTask() {
+            @Override
+            public void run() {
+                synchronized (RegionFileWatchService.this) {
+                    if (scheduledUpdates.get(regionPos) != this) return;
+                    scheduledUpdates.remove(regionPos);
                 }
-            };
-            scheduledUpdates.put(regionPos, task);
-            delayTimer.schedule(task, 10000);
-        } catch (NumberFormatException ignore) {}
+
+                updateRegion(regionPos);
+            }
+        };
+        scheduledUpdates.put(regionPos, task);
+        delayTimer.schedule(task, updateDelay);
+    }
+
+    private void updateRegion(Vector2i regionPos) {
+        Collection<Vector2i> changedChunks = null;
+        try {
+            changedChunks = getChangedChunks(regionPos);
+            if (changedChunks != null && changedChunks.isEmpty()) {
+                if (verbose) Logger.global.logDebug("Skipped update for unchanged region: " + regionPos + " (Map: " + map.getId() + ")");
+                return;
+            }
+        } catch (RuntimeException ex) {
+            // better render too much than missing an update
+            Logger.global.logDebug("Failed to check region " + regionPos + " for changes (Map: " + map.getId() + "): " + ex);
+        }
+
+        // only render the tiles of the chunks that actually changed
+        WorldRegionRenderTask task = changedChunks != null ?
+                new WorldRegionRenderTask(map, regionPos, changedChunks) :
+                new WorldRegionRenderTask(map, regionPos);
+        renderManager.scheduleRenderTask(task);
+
+        if (verbose) Logger.global.logInfo("Scheduled update for region: " + regionPos +
+                (changedChunks != null ? " (" + changedChunks.size() + " changed chunks)" : "") + " (Map: " + map.getId() + ")");
+    }
+
+    /**
+     * Returns all chunks of the region that have been modified since the region has last been rendered,
+     * or <code>null</code> if the region has not been rendered yet.
+     */
+    private Collection<Vector2i> getChangedChunks(Vector2i regionPos) {
+        long renderTime = map.getRenderState().getRenderTime(regionPos);
+        if (renderTime < 0) return null;
+
+        Region region = world.getRegion(regionPos.getX(), regionPos.getY());
+        WorldChangeIndex.RegionFileState regionFileState = region.getRegionFileState();
+        if (map.getChangeIndex().isUnchanged(regionPos, regionFileState)) return Collections.emptyList();
+
+        return region.listChunks(renderTime);
     }
 
     public void close() {
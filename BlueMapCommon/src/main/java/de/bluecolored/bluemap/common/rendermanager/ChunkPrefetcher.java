@@ -0,0 +1,142 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.rendermanager;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.debug.StateDumper;
+import de.bluecolored.bluemap.core.world.World;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads chunks asynchronously on a small dedicated thread-pool, so they are already in the chunk-cache of the world
+ * when a render-thread needs them.
+ */
+public class ChunkPrefetcher {
+
+    private static final ChunkPrefetcher GLOBAL = new ChunkPrefetcher(2, 4096);
+
+    private final ThreadPoolExecutor executor;
+
+    @DebugDump private volatile int prefetchDepth;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public ChunkPrefetcher(int threadCount, int maxQueueSize) {
+        AtomicInteger nextThreadIndex = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(
+                threadCount, threadCount,
+                10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(maxQueueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "BlueMap-ChunkPrefetcher-" + nextThreadIndex.getAndIncrement());
+                    // use current classloader, this fixes ClassLoading issues with forge
+                    thread.setContextClassLoader(BlueMap.class.getClassLoader());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.prefetchDepth = 8;
+
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+
+        StateDumper.global().register(this);
+    }
+
+    /**
+     * Schedules the chunk to be loaded into the chunk-cache of the world.<br>
+     * Returns a {@link Future} that is done when the chunk has been loaded, or <code>null</code> if the prefetcher
+     * is currently too busy to accept more chunks.
+     */
+    public Future<?> prefetch(World world, Vector2i chunk) {
+        try {
+            return executor.submit(() -> world.getChunk(chunk.getX(), chunk.getY()));
+        } catch (RejectedExecutionException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Records whether a chunk was already loaded (hit) or not (miss) by the time a render-thread needed it
+     */
+    public void recordAccess(boolean hit) {
+        if (hit) hits.increment();
+        else misses.increment();
+    }
+
+    /**
+     * The amount of tiles that should be looked ahead to prefetch their chunks.
+     * A value of 0 or less disables prefetching.
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    @DebugDump
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @DebugDump
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @DebugDump
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        if (total == 0) return 1;
+        return (double) hits / total;
+    }
+
+    @DebugDump
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+    }
+
+    public static ChunkPrefetcher global() {
+        return GLOBAL;
+    }
+
+}
@@ -64,6 +64,12 @@ public synchronized boolean hasMoreWork() {
         return this.currentTaskIndex < this.tasks.size();
     }
 
+    @Override
+    public synchronized long getNotBefore() {
+        if (!hasMoreWork()) return 0;
+        return this.tasks.get(this.currentTaskIndex).getNotBefore();
+    }
+
     @Override
     public double estimateProgress() {
         int currentTask = this.currentTaskIndex;
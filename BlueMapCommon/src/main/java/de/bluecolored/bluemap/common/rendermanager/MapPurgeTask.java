@@ -67,6 +67,7 @@ public void doWork() throws Exception {
         } finally {
             // reset renderstate
             map.getRenderState().reset();
+            map.getChangeIndex().reset();
         }
     }
 
@@ -275,6 +275,25 @@ private void doWork() throws Exception {
                 this.renderTasks.wait(10000);
 
             task = this.renderTasks.getFirst();
+
+            // the task can't continue yet, so we work on other tasks in the meantime or wait until it can
+            long now = System.currentTimeMillis();
+            long delay = task.getNotBefore() - now;
+            if (delay > 0 && task.hasMoreWork()) {
+                long otherDelay = getNextNotBefore() - now;
+                if (busyCount.get() <= 0 && otherDelay <= 0) {
+                    this.renderTasks.removeFirst();
+                    this.renderTasks.addLast(task);
+                    this.renderTasks.notifyAll();
+
+                    this.newTask = true;
+                } else {
+                    this.renderTasks.wait(Math.max(Math.min(Math.min(delay, otherDelay), 10000), 1));
+                }
+
+                return;
+            }
+
             if (this.newTask) {
                 this.newTask = false;
                 this.progressTracker.resetAndStart(task::estimateProgress);
@@ -312,6 +331,27 @@ private void doWork() throws Exception {
         }
     }
 
+    /**
+     * Returns the earliest time at which any scheduled task (except the first one) can be worked on,
+     * or {@link Long#MAX_VALUE} if there are no other tasks.
+     */
+    private long getNextNotBefore() {
+        synchronized (this.renderTasks) {
+            long next = Long.MAX_VALUE;
+
+            Iterator<RenderTask> iterator = renderTasks.iterator();
+            if (!iterator.hasNext()) return next;
+            iterator.next(); // skip first
+
+            while (iterator.hasNext()) {
+                next = Math.min(next, iterator.next().getNotBefore());
+                if (next <= 0) break;
+            }
+
+            return next;
+        }
+    }
+
     public class WorkerThread extends Thread {
 
         private final int id;
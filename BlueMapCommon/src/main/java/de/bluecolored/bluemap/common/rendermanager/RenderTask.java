@@ -43,6 +43,14 @@ default double estimateProgress() {
         return 0d;
     }
 
+    /**
+     * The time (in milliseconds) before which this task can not do any more work, even though it {@link #hasMoreWork() has more work}.<br>
+     * Until then, the {@link RenderManager} will work on other tasks (or wait) instead of calling {@link #doWork()}.
+     */
+    default long getNotBefore() {
+        return 0;
+    }
+
     /**
      * Requests to cancel this task. The task then self-decides what to do with this request.
      */
@@ -26,10 +26,17 @@
 
 import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -37,8 +44,11 @@
 import com.flowpowered.math.vector.Vector2l;
 
 import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.map.WorldChangeIndex;
 import de.bluecolored.bluemap.core.world.Chunk;
+import de.bluecolored.bluemap.core.world.ChunkLoadFailures;
 import de.bluecolored.bluemap.core.world.Grid;
 import de.bluecolored.bluemap.core.world.Region;
 
@@ -48,10 +58,17 @@ public class WorldRegionRenderTask implements RenderTask {
     private final BmMap map;
     private final Vector2i worldRegion;
     private final boolean force;
+    private final Collection<Vector2i> changedChunks;
 
     private Deque<Vector2i> tiles;
+    private final Map<Vector2i, Long> deferredTiles;
+    private final Set<Vector2i> failedChunks;
     private int tileCount;
     private long startTime;
+    private WorldChangeIndex.RegionFileState regionFileState;
+
+    private final ChunkPrefetcher prefetcher;
+    private final Map<Vector2i, Future<?>> prefetchedChunks;
 
     private volatile int atWork;
     private volatile boolean cancelled;
@@ -61,19 +78,42 @@ public WorldRegionRenderTask(BmMap map, Vector2i worldRegion) {
     }
 
     public WorldRegionRenderTask(BmMap map, Vector2i worldRegion, boolean force) {
+        this(map, worldRegion, force, null);
+    }
+
+    /**
+     * Creates a task that only renders the tiles of the given chunks of the region, that are known to have changed
+     * since the region has last been rendered.
+     */
+    public WorldRegionRenderTask(BmMap map, Vector2i worldRegion, Collection<Vector2i> changedChunks) {
+        this(map, worldRegion, false, Collections.unmodifiableSet(new HashSet<>(changedChunks)));
+    }
+
+    private WorldRegionRenderTask(BmMap map, Vector2i worldRegion, boolean force, Collection<Vector2i> changedChunks) {
         this.map = map;
         this.worldRegion = worldRegion;
         this.force = force;
+        this.changedChunks = changedChunks;
 
         this.tiles = null;
+        this.deferredTiles = new LinkedHashMap<>();
+        this.failedChunks = new HashSet<>();
         this.tileCount = -1;
         this.startTime = -1;
+        this.regionFileState = null;
+
+        this.prefetcher = ChunkPrefetcher.global();
+        this.prefetchedChunks = new HashMap<>();
 
         this.atWork = 0;
         this.cancelled = false;
     }
 
-    private synchronized void init() {
+    /**
+     * Collects the tiles that need to be rendered and returns the chunks that should be preloaded for them
+     * (see {@link #preloadChunks(Collection)}).
+     */
+    private synchronized Collection<Vector2i> init() {
         Set<Vector2l> tileSet = new HashSet<>();
         startTime = System.currentTimeMillis();
 
@@ -83,7 +123,17 @@ private synchronized void init() {
         if (!force) changesSince = map.getRenderState().getRenderTime(worldRegion);
 
         Region region = map.getWorld().getRegion(worldRegion.getX(), worldRegion.getY());
-        Collection<Vector2i> chunks = region.listChunks(changesSince);
+
+        // skip reading the region-file completely if it didn't change since the last render
+        regionFileState = region.getRegionFileState();
+        if (!force && changesSince >= 0 && map.getChangeIndex().isUnchanged(worldRegion, regionFileState)) {
+            this.tileCount = 0;
+            this.tiles = new ArrayDeque<>();
+            complete();
+            return Collections.emptyList();
+        }
+
+        Collection<Vector2i> chunks = changedChunks != null ? changedChunks : region.listChunks(changesSince);
 
         Grid tileGrid = map.getHiresModelManager().getTileGrid();
         Grid chunkGrid = map.getWorld().getChunkGrid();
@@ -100,6 +150,9 @@ private synchronized void init() {
 
             // make sure chunk gets re-loaded from disk
             map.getWorld().invalidateChunkCache(chunk.getX(), chunk.getY());
+
+            // give the chunk another chance if it failed to load before, but changed since then
+            map.getWorld().getChunkLoadFailures().resetIfChanged(chunk.getX(), chunk.getY(), region);
         }
 
         Predicate<Vector2i> boundsTileFilter = t -> {
@@ -120,7 +173,45 @@ private synchronized void init() {
                 .filter(map.getTileFilter())
                 .collect(Collectors.toCollection(ArrayDeque::new));
 
-        if (tiles.isEmpty()) complete();
+        if (tiles.isEmpty()) {
+            complete();
+            return Collections.emptyList();
+        }
+
+        return collectTileChunks();
+    }
+
+    /**
+     * Returns all chunks that are needed to render the tiles of this task, in the order the tiles will be rendered
+     */
+    private synchronized Collection<Vector2i> collectTileChunks() {
+        Grid tileGrid = map.getHiresModelManager().getTileGrid();
+        Grid chunkGrid = map.getWorld().getChunkGrid();
+
+        Set<Vector2i> chunks = new LinkedHashSet<>();
+        for (Vector2i tile : tiles) {
+            Vector2i minChunk = tileGrid.getCellMin(tile, chunkGrid);
+            Vector2i maxChunk = tileGrid.getCellMax(tile, chunkGrid);
+
+            // include a border of one chunk, since neighbouring blocks are also needed to render a tile
+            for (int x = minChunk.getX() - 1; x <= maxChunk.getX() + 1; x++) {
+                for (int z = minChunk.getY() - 1; z <= maxChunk.getY() + 1; z++) {
+                    chunks.add(new Vector2i(x, z));
+                }
+            }
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Loads all the given chunks at once, so they can be read sequentially from the region-file instead of being loaded
+     * one by one while rendering.<br>
+     * This is called without holding the lock of this task, so other render-threads can already work on its tiles.
+     */
+    private void preloadChunks(Collection<Vector2i> chunks) {
+        if (chunks.isEmpty()) return;
+        map.getWorld().preloadRegionChunks(worldRegion.getX(), worldRegion.getY(), chunks);
     }
 
     @Override
@@ -128,26 +219,173 @@ public void doWork() {
         if (cancelled) return;
 
         Vector2i tile;
+        Collection<Vector2i> chunksToPreload = Collections.emptyList();
 
         synchronized (this) {
-            if (tiles == null) init();
-            if (tiles.isEmpty()) return;
+            if (tiles == null) chunksToPreload = init();
 
             tile = tiles.pollFirst();
+            if (tile == null) tile = pollDeferredTile();
+            if (tile == null) return; // all remaining tiles are deferred (see getNotBefore())
+
+            recordPrefetchAccess(tile);
+            prefetchChunks();
 
             this.atWork++;
         }
 
+        preloadChunks(chunksToPreload);
+
         //Logger.global.logInfo("Working on " + worldRegion + " - Tile " + tile);
-        if (tileRenderPreconditions(tile)) {
+        if (tileRenderPreconditions(tile) && loadTileChunks(tile)) {
             map.renderTile(tile); // <- actual work
         }
 
         synchronized (this) {
             this.atWork--;
 
-            if (atWork <= 0 && tiles.isEmpty() && !cancelled) {
+            if (!cancelled) checkFailedChunks(tile);
+
+            if (atWork <= 0 && tiles.isEmpty() && deferredTiles.isEmpty() && !cancelled) {
                 complete();
+                prefetchedChunks.clear();
+            }
+        }
+    }
+
+    /**
+     * Loads all chunks that are needed to render the tile (including the neighbouring chunks) and returns false if any of
+     * the tile's own chunks failed to load but will be retried, so the tile is not rendered and saved with holes in it.<br>
+     * Chunks that failed to load for good (and neighbouring chunks that are still pending) are rendered as empty chunks.
+     */
+    private boolean loadTileChunks(Vector2i tile) {
+        ChunkLoadFailures loadFailures = map.getWorld().getChunkLoadFailures();
+        Grid tileGrid = map.getHiresModelManager().getTileGrid();
+        Grid chunkGrid = map.getWorld().getChunkGrid();
+
+        Vector2i minChunk = tileGrid.getCellMin(tile, chunkGrid);
+        Vector2i maxChunk = tileGrid.getCellMax(tile, chunkGrid);
+
+        boolean loaded = true;
+        for (int x = minChunk.getX() - 1; x <= maxChunk.getX() + 1; x++) {
+            for (int z = minChunk.getY() - 1; z <= maxChunk.getY() + 1; z++) {
+                map.getWorld().getChunk(x, z);
+                if (isTileChunk(minChunk, maxChunk, x, z) && loadFailures.isPending(x, z)) loaded = false;
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     * If some of the tile's own chunks failed to load but will be retried later, the tile is deferred to be
+     * rendered again after their back-off time, instead of waiting for the chunks on the render-thread.<br>
+     * Chunks that failed to load for good have been rendered as empty chunks, they are remembered to be reported
+     * when this task completes.
+     */
+    private synchronized void checkFailedChunks(Vector2i tile) {
+        ChunkLoadFailures loadFailures = map.getWorld().getChunkLoadFailures();
+        Grid tileGrid = map.getHiresModelManager().getTileGrid();
+        Grid chunkGrid = map.getWorld().getChunkGrid();
+
+        Vector2i minChunk = tileGrid.getCellMin(tile, chunkGrid);
+        Vector2i maxChunk = tileGrid.getCellMax(tile, chunkGrid);
+
+        long retryTime = -1;
+        for (int x = minChunk.getX() - 1; x <= maxChunk.getX() + 1; x++) {
+            for (int z = minChunk.getY() - 1; z <= maxChunk.getY() + 1; z++) {
+                if (loadFailures.isBad(x, z))
+                    failedChunks.add(new Vector2i(x, z));
+                else if (isTileChunk(minChunk, maxChunk, x, z) && loadFailures.isPending(x, z))
+                    retryTime = Math.max(retryTime, loadFailures.getRetryTime(x, z));
+            }
+        }
+
+        if (retryTime >= 0) deferredTiles.put(tile, retryTime);
+    }
+
+    private static boolean isTileChunk(Vector2i minChunk, Vector2i maxChunk, int x, int z) {
+        return x >= minChunk.getX() && x <= maxChunk.getX() && z >= minChunk.getY() && z <= maxChunk.getY();
+    }
+
+    /**
+     * Returns (and removes) the first deferred tile that is ready to be rendered again, or null if there is none
+     */
+    private synchronized Vector2i pollDeferredTile() {
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<Vector2i, Long>> iterator = deferredTiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Vector2i, Long> entry = iterator.next();
+            if (entry.getValue() <= now) {
+                iterator.remove();
+                return entry.getKey();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * If only deferred tiles are left, this returns the time at which the first of them can be rendered again,
+     * so the {@link RenderManager} can work on other tasks in the meantime instead of waiting for them.
+     */
+    @Override
+    public synchronized long getNotBefore() {
+        if (tiles == null || !tiles.isEmpty()) return 0;
+
+        return deferredTiles.values().stream()
+                .mapToLong(Long::longValue)
+                .min()
+                .orElse(0);
+    }
+
+    /**
+     * Schedules the chunks of the next few tiles to be loaded asynchronously, so they are ready when a render-thread
+     * starts working on those tiles.
+     */
+    private synchronized void prefetchChunks() {
+        int depth = prefetcher.getPrefetchDepth();
+        if (depth <= 0) return;
+
+        Grid tileGrid = map.getHiresModelManager().getTileGrid();
+        Grid chunkGrid = map.getWorld().getChunkGrid();
+
+        Iterator<Vector2i> tileIterator = tiles.iterator();
+        for (int i = 0; i < depth && tileIterator.hasNext(); i++) {
+            Vector2i tile = tileIterator.next();
+            Vector2i minChunk = tileGrid.getCellMin(tile, chunkGrid);
+            Vector2i maxChunk = tileGrid.getCellMax(tile, chunkGrid);
+
+            // include a border of one chunk, since neighbouring blocks are also needed to render a tile
+            for (int x = minChunk.getX() - 1; x <= maxChunk.getX() + 1; x++) {
+                for (int z = minChunk.getY() - 1; z <= maxChunk.getY() + 1; z++) {
+                    Vector2i chunk = new Vector2i(x, z);
+                    if (prefetchedChunks.containsKey(chunk)) continue;
+
+                    Future<?> future = prefetcher.prefetch(map.getWorld(), chunk);
+                    if (future == null) return; // prefetcher is busy
+                    prefetchedChunks.put(chunk, future);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records for each chunk of the tile if it has been prefetched before the tile is going to be rendered
+     */
+    private synchronized void recordPrefetchAccess(Vector2i tile) {
+        if (prefetcher.getPrefetchDepth() <= 0) return;
+
+        Grid tileGrid = map.getHiresModelManager().getTileGrid();
+        Grid chunkGrid = map.getWorld().getChunkGrid();
+
+        Vector2i minChunk = tileGrid.getCellMin(tile, chunkGrid);
+        Vector2i maxChunk = tileGrid.getCellMax(tile, chunkGrid);
+        for (int x = minChunk.getX(); x <= maxChunk.getX(); x++) {
+            for (int z = minChunk.getY(); z <= maxChunk.getY(); z++) {
+                Future<?> future = prefetchedChunks.get(new Vector2i(x, z));
+                prefetcher.recordAccess(future != null && future.isDone());
             }
         }
     }
@@ -189,7 +427,15 @@ private boolean tileRenderPreconditions(Vector2i tile) {
     }
 
     private void complete() {
+        // the failed chunks are not loaded again until they change, which will then cause their tiles to be rendered again
+        if (!failedChunks.isEmpty()) {
+            Logger.global.logWarning("Some chunks of region " + worldRegion + " (map: '" + map.getId() + "') failed to load " +
+                                     "and have been rendered as empty chunks: " + failedChunks +
+                                     " (They will be rendered again once they change)");
+        }
+
         map.getRenderState().setRenderTime(worldRegion, startTime);
+        map.getChangeIndex().setRegionState(worldRegion, regionFileState);
 
         //Logger.global.logInfo("Done with: " + worldRegion);
     }
@@ -197,7 +443,7 @@ private void complete() {
     @Override
     @DebugDump
     public synchronized boolean hasMoreWork() {
-        return !cancelled && (tiles == null || !tiles.isEmpty());
+        return !cancelled && (tiles == null || !tiles.isEmpty() || !deferredTiles.isEmpty());
     }
 
     @Override
@@ -206,7 +452,7 @@ public double estimateProgress() {
         if (tiles == null) return 0;
         if (tileCount == 0) return 1;
 
-        double remainingTiles = tiles.size();
+        double remainingTiles = tiles.size() + deferredTiles.size();
         return 1 - (remainingTiles / this.tileCount);
     }
 
@@ -216,9 +462,26 @@ public void cancel() {
 
         synchronized (this) {
             if (tiles != null) this.tiles.clear();
+            deferredTiles.clear();
+            prefetchedChunks.values().forEach(future -> future.cancel(false));
+            prefetchedChunks.clear();
         }
     }
 
+    /**
+     * A task that already started rendering does not include changes that happened after it started,
+     * so only tasks that did not start yet contain other (equal) tasks.<br>
+     * A task that only renders some changed chunks only contains tasks that render a subset of those chunks.
+     */
+    @Override
+    public synchronized boolean contains(RenderTask task) {
+        if (tiles != null || !equals(task)) return false;
+        if (changedChunks == null) return true;
+
+        WorldRegionRenderTask other = (WorldRegionRenderTask) task;
+        return other.changedChunks != null && changedChunks.containsAll(other.changedChunks);
+    }
+
     public BmMap getMap() {
         return map;
     }
@@ -67,7 +67,8 @@ export class Map {
 			hires: {
 				tileSize: {x: 32, z: 32},
 				scale: {x: 1, z: 1},
-				translate: {x: 2, z: 2}
+				translate: {x: 2, z: 2},
+				greedyMeshing: false
 			},
 			lowres: {
 				tileSize: {x: 32, z: 32},
@@ -158,7 +159,8 @@ export class Map {
 				this.data.hires = {
 					tileSize: {...this.data.hires.tileSize, ...vecArrToObj(worldSettings.hires.tileSize, true)},
 					scale: {...this.data.hires.scale, ...vecArrToObj(worldSettings.hires.scale, true)},
-					translate: {...this.data.hires.translate, ...vecArrToObj(worldSettings.hires.translate, true)}
+					translate: {...this.data.hires.translate, ...vecArrToObj(worldSettings.hires.translate, true)},
+					greedyMeshing: !!worldSettings.hires.greedyMeshing
 				};
 				this.data.lowres = {
 					tileSize: {...this.data.lowres.tileSize, ...vecArrToObj(worldSettings.lowres.tileSize, true)},
@@ -307,6 +309,13 @@ export class Map {
 				wireframe: false,
 			});
 
+			// tiles of maps with greedy-meshing contain faces with repeating uvs that need to be wrapped in the shader
+			if (this.data.hires.greedyMeshing) {
+				material.defines = { TEXTURE_WRAP: "" };
+				material.extensions.derivatives = true;
+				material.extensions.shaderTextureLOD = true;
+			}
+
 			material.needsUpdate = true;
 			materials[i] = material;
 		}
@@ -46,7 +46,17 @@ varying float vBlocklight;
 //varying float vDistance;
 
 void main() {
+	#ifdef TEXTURE_WRAP
+	// merged faces (greedy-meshing) have repeating uvs that are always >= 2, those need to be wrapped into the texture
+	// the gradients of the unwrapped uvs are used, so the mipmap-level doesn't jump on the edges between the repeats
+	vec2 uv = vUv;
+	vec2 uvDx = dFdx(vUv);
+	vec2 uvDy = dFdy(vUv);
+	if (uv.x >= 1.5) uv = fract(uv);
+	vec4 color = texture2DGradEXT(textureImage, uv, uvDx, uvDy);
+	#else
 	vec4 color = texture(textureImage, vUv);
+	#endif
 	if (color.a <= 0.01) discard;
 	
 	//apply vertex-color
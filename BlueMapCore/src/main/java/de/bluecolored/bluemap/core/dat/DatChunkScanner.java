@@ -0,0 +1,260 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.dat;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.dat.region.DatRegion;
+import de.bluecolored.bluemap.core.logger.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds all chunk-files of an alpha-world (<code>&lt;x&amp;63&gt;/&lt;z&amp;63&gt;/c.&lt;x&gt;.&lt;z&gt;.dat</code>, all in base 36).<br>
+ * <br>
+ * The first-level folders are scanned in parallel. The content of each folder is cached together with the folder's
+ * last-modification time, so subsequent scans only need to list the folders that changed since the last scan.
+ */
+@DebugDump
+class DatChunkScanner {
+
+    /**
+     * Folders that have been modified less than this amount of milliseconds before a scan are not cached,
+     * because files could be added later within the same (file-system dependent) modification-time resolution
+     */
+    private static final long MODIFICATION_TIME_TOLERANCE = 2000;
+
+    private final Path worldFolder;
+
+    private final Map<Path, FolderState<Path>> firstLevelFolders;
+    private final Map<Path, FolderState<Vector2i>> secondLevelFolders;
+
+    public DatChunkScanner(Path worldFolder) {
+        this.worldFolder = worldFolder;
+
+        this.firstLevelFolders = new ConcurrentHashMap<>();
+        this.secondLevelFolders = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the positions of all chunk-files in the world-folder
+     */
+    public synchronized Collection<Vector2i> scan() {
+        long scanTime = System.currentTimeMillis();
+
+        List<Path> folders;
+        try {
+            folders = listFolders(worldFolder);
+        } catch (IOException ex) {
+            Logger.global.logWarning("Failed to list chunk-folders of world: " + worldFolder + " (" + ex + ")");
+            return Collections.emptyList();
+        }
+
+        Set<Path> subFolders = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<List<Vector2i>>> futures = new ArrayList<>(folders.size());
+        for (Path folder : folders) {
+            futures.add(CompletableFuture.supplyAsync(() -> scanFirstLevelFolder(folder, scanTime, subFolders), BlueMap.THREAD_POOL));
+        }
+
+        List<Vector2i> chunks = new ArrayList<>();
+        for (CompletableFuture<List<Vector2i>> future : futures) {
+            try {
+                chunks.addAll(future.join());
+            } catch (CompletionException ex) {
+                Logger.global.logWarning("Failed to scan chunk-folder of world: " + worldFolder + " (" + ex.getCause() + ")");
+            }
+        }
+
+        // forget folders that have been deleted
+        firstLevelFolders.keySet().retainAll(folders);
+        secondLevelFolders.keySet().retainAll(subFolders);
+
+        return chunks;
+    }
+
+    /**
+     * Returns the positions of all chunk-files of the specified region (see {@link DatVirtualRegion}).<br>
+     * Only the folders that can contain chunks of this region are checked, using the same cached folder-contents as {@link #scan()}.
+     */
+    public Collection<Vector2i> scanRegion(int regionX, int regionZ) {
+        long scanTime = System.currentTimeMillis();
+
+        int minX = regionX * DatVirtualRegion.REGION_SIZE, maxX = minX + DatVirtualRegion.REGION_SIZE - 1;
+        int minZ = regionZ * DatVirtualRegion.REGION_SIZE, maxZ = minZ + DatVirtualRegion.REGION_SIZE - 1;
+
+        List<Vector2i> chunks = new ArrayList<>();
+        for (int x = minX; x <= maxX; x++) {
+            Path folder = worldFolder.resolve(Integer.toString(x & 63, 36));
+            for (int z = minZ; z <= maxZ; z++) {
+                Path subFolder = folder.resolve(Integer.toString(z & 63, 36));
+                for (Vector2i chunk : getFolderContent(secondLevelFolders, subFolder, scanTime, DatChunkScanner::listChunks)) {
+                    if (
+                            chunk.getX() >= minX && chunk.getX() <= maxX &&
+                            chunk.getY() >= minZ && chunk.getY() <= maxZ
+                    ) chunks.add(chunk);
+                }
+            }
+        }
+
+        return chunks;
+    }
+
+    private List<Vector2i> scanFirstLevelFolder(Path folder, long scanTime, Set<Path> foundSubFolders) {
+        List<Path> subFolders = getFolderContent(firstLevelFolders, folder, scanTime, DatChunkScanner::listFolders);
+        foundSubFolders.addAll(subFolders);
+
+        List<Vector2i> chunks = new ArrayList<>();
+        for (Path subFolder : subFolders) {
+            chunks.addAll(getFolderContent(secondLevelFolders, subFolder, scanTime, DatChunkScanner::listChunks));
+        }
+
+        return chunks;
+    }
+
+    private static <T> List<T> getFolderContent(Map<Path, FolderState<T>> cache, Path folder, long scanTime, FolderLister<T> lister) {
+        long lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(folder).toMillis();
+        } catch (NoSuchFileException ex) {
+            cache.remove(folder);
+            return Collections.emptyList();
+        } catch (IOException ex) {
+            Logger.global.logDebug("Failed to read last-modification time of folder: " + folder + " (" + ex + ")");
+            lastModified = -1;
+        }
+
+        FolderState<T> state = cache.get(folder);
+        if (state != null && lastModified != -1 && state.lastModified == lastModified) return state.content;
+
+        List<T> content;
+        try {
+            content = lister.list(folder);
+        } catch (NoSuchFileException ex) {
+            cache.remove(folder);
+            return Collections.emptyList();
+        } catch (IOException ex) {
+            Logger.global.logWarning("Failed to list folder: " + folder + " (" + ex + ")");
+            cache.remove(folder);
+            return Collections.emptyList();
+        }
+
+        if (lastModified != -1 && scanTime - lastModified >= MODIFICATION_TIME_TOLERANCE) {
+            cache.put(folder, new FolderState<>(lastModified, content));
+        } else {
+            cache.remove(folder);
+        }
+
+        return content;
+    }
+
+    /**
+     * Lists all sub-folders that are named like a (base 36) chunk-folder (0 - 63)
+     */
+    private static List<Path> listFolders(Path folder) throws IOException {
+        List<Path> folders = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, DatChunkScanner::isChunkFolder)) {
+            for (Path path : stream) folders.add(path);
+        }
+        return folders;
+    }
+
+    /**
+     * Lists the positions of all chunk-files in the folder.<br>
+     * The files are only matched by their name, to avoid reading the attributes of every single file.
+     * (Empty files are handled later by the {@link DatRegion})
+     */
+    private static List<Vector2i> listChunks(Path folder) throws IOException {
+        List<Vector2i> chunks = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path path : stream) {
+                Vector2i chunk = parseChunkFileName(path.getFileName().toString());
+                if (chunk != null) chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    private static boolean isChunkFolder(Path path) {
+        return isChunkFolderName(path.getFileName().toString()) && Files.isDirectory(path);
+    }
+
+    static boolean isChunkFolderName(String name) {
+        if (name.length() > 2) return false;
+
+        try {
+            int value = Integer.parseInt(name, 36);
+            return value >= 0 && value <= 63;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    static Vector2i parseChunkFileName(String fileName) {
+        if (!fileName.startsWith("c.") || !fileName.endsWith(DatRegion.FILE_SUFFIX)) return null;
+
+        String[] filenameParts = fileName.split("\\.");
+        if (filenameParts.length != 4) return null;
+
+        try {
+            int x = Integer.parseInt(filenameParts[1], 36);
+            int z = Integer.parseInt(filenameParts[2], 36);
+            return new Vector2i(x, z);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static class FolderState<T> {
+
+        private final long lastModified;
+        private final List<T> content;
+
+        private FolderState(long lastModified, List<T> content) {
+            this.lastModified = lastModified;
+            this.content = Collections.unmodifiableList(content);
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface FolderLister<T> {
+        List<T> list(Path folder) throws IOException;
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.dat;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.dat.region.DatRegion;
+import de.bluecolored.bluemap.core.map.WorldChangeIndex;
+import de.bluecolored.bluemap.core.world.Chunk;
+import de.bluecolored.bluemap.core.world.Region;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A region of 32x32 chunks in an alpha-world.<br>
+ * Alpha-worlds store each chunk in its own file, this groups them into regions of the same size as anvil-regions,
+ * so a map-update does not need to create a render-task (with its own render-state) for every single chunk.
+ * The chunks themselves are still loaded from the single chunk-files (see {@link DatRegion}).
+ */
+class DatVirtualRegion implements Region {
+
+    public static final int REGION_SIZE = 32;
+
+    private final DatWorld world;
+    private final Vector2i regionPos;
+
+    public DatVirtualRegion(DatWorld world, Vector2i regionPos) {
+        this.world = world;
+        this.regionPos = regionPos;
+    }
+
+    @Override
+    public Collection<Vector2i> listChunks(long modifiedSince) {
+        List<Vector2i> chunks = new ArrayList<>();
+
+        for (Vector2i chunk : world.getChunkScanner().scanRegion(regionPos.getX(), regionPos.getY())) {
+            BasicFileAttributes attributes = readChunkFileAttributes(chunk);
+            if (attributes == null || attributes.size() <= 0) continue;
+            if (attributes.lastModifiedTime().toMillis() < modifiedSince) continue;
+
+            chunks.add(chunk);
+        }
+
+        return chunks;
+    }
+
+    @Override
+    public Chunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData) throws IOException {
+        return world.loadChunkRegion(chunkX, chunkZ).loadChunk(chunkX, chunkZ, ignoreMissingLightData);
+    }
+
+    /**
+     * A virtual region has no single region-file, so this returns the world-folder containing all chunk-files
+     */
+    @Override
+    public Path getRegionFile() {
+        return world.getSaveFolder();
+    }
+
+    /**
+     * Returns the combined size and the latest last-modification time of all chunk-files of this region
+     */
+    @Override
+    public WorldChangeIndex.RegionFileState getRegionFileState() {
+        long size = 0, lastModified = 0;
+
+        for (Vector2i chunk : world.getChunkScanner().scanRegion(regionPos.getX(), regionPos.getY())) {
+            BasicFileAttributes attributes = readChunkFileAttributes(chunk);
+            if (attributes == null) continue;
+
+            size += attributes.size();
+            lastModified = Math.max(lastModified, attributes.lastModifiedTime().toMillis());
+        }
+
+        return new WorldChangeIndex.RegionFileState(size, lastModified);
+    }
+
+    /**
+     * Returns the last-modification time of the chunk's own file
+     */
+    @Override
+    public long getChunkVersion(int chunkX, int chunkZ) {
+        BasicFileAttributes attributes = readChunkFileAttributes(chunkX, chunkZ);
+        if (attributes == null) return -1;
+        return attributes.lastModifiedTime().toMillis();
+    }
+
+    private BasicFileAttributes readChunkFileAttributes(Vector2i chunk) {
+        return readChunkFileAttributes(chunk.getX(), chunk.getY());
+    }
+
+    private BasicFileAttributes readChunkFileAttributes(int chunkX, int chunkZ) {
+        Path chunkFile = world.getSaveFolder().resolve(DatRegion.getRegionFileName(chunkX, chunkZ));
+
+        try {
+            return Files.readAttributes(chunkFile, BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return null; // file does not exist (anymore)
+        }
+    }
+
+}
@@ -4,8 +4,9 @@
 import com.flowpowered.math.vector.Vector3i;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.core.BlueMap;
-import de.bluecolored.bluemap.core.dat.region.DatRegion;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.mcr.region.RegionType;
 import de.bluecolored.bluemap.core.mcr.region.WorldChunkManager;
@@ -14,20 +15,21 @@
 import net.querz.nbt.CompoundTag;
 import net.querz.nbt.NBTUtil;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static de.bluecolored.bluemap.core.mcr.MCRWorld.resolveLevelFile;
 
+@DebugDump
 public class DatWorld implements World {
     private static final Grid CHUNK_GRID = new Grid(16);
-    private static final Grid REGION_GRID = new Grid(1).multiply(CHUNK_GRID);
+    private static final Grid REGION_GRID = new Grid(DatVirtualRegion.REGION_SIZE).multiply(CHUNK_GRID);
     private static final Vector2iCache VECTOR_2_I_CACHE = new Vector2iCache();
     private final Path worldFolder;
     private final String name;
@@ -36,10 +38,25 @@ public class DatWorld implements World {
     private final int skyLight;
     private final boolean ignoreMissingLightData;
     private final LoadingCache<Vector2i, Region> regionCache;
-    private final LoadingCache<Vector2i, Chunk> chunkCache;
-    protected WorldChunkManager wcm;
+    @DebugDump
+    private final ChunkCache chunkCache;
+    private final ChunkSnapshotStore chunkSnapshotStore;
+    private final DatChunkScanner chunkScanner;
+    protected ThreadLocal<WorldChunkManager> wcm;
 
     public DatWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData) throws IOException {
+        this(worldFolder, skyLight, ignoreMissingLightData, ChunkCache.DEFAULT_MAX_MEMORY);
+    }
+
+    public DatWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData, long chunkCacheMemory) throws IOException {
+        this(worldFolder, skyLight, ignoreMissingLightData, chunkCacheMemory, null);
+    }
+
+    /**
+     * @param chunkSnapshotFolder The folder to store decoded chunk-snapshots in (see {@link ChunkSnapshotStore}),
+     *                            or <code>null</code> to not use chunk-snapshots
+     */
+    public DatWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData, long chunkCacheMemory, Path chunkSnapshotFolder) throws IOException {
         this.worldFolder = worldFolder;
         this.skyLight = skyLight;
         this.ignoreMissingLightData = ignoreMissingLightData;
@@ -48,13 +65,12 @@ public DatWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData)
                 .executor(BlueMap.THREAD_POOL)
                 .maximumSize(100)
                 .expireAfterWrite(1, TimeUnit.MINUTES)
+                .removalListener(this::onRegionRemoved)
                 .build(this::loadRegion);
 
-        this.chunkCache = Caffeine.newBuilder()
-                .executor(BlueMap.THREAD_POOL)
-                .maximumSize(500)
-                .expireAfterWrite(1, TimeUnit.MINUTES)
-                .build(this::loadChunk);
+        this.chunkCache = new ChunkCache(chunkCacheMemory, this::loadChunk, this::getChunkVersion);
+        this.chunkSnapshotStore = chunkSnapshotFolder != null ? new ChunkSnapshotStore(chunkSnapshotFolder, new DatChunk.SnapshotCodec(this)) : null;
+        this.chunkScanner = new DatChunkScanner(worldFolder);
 
         try {
             Path levelFile = resolveLevelFile(worldFolder);
@@ -74,7 +90,7 @@ public DatWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData)
             throw new IOException("Invalid level.dat format!", e);
         }
 
-        this.wcm = new WorldChunkManager(this);
+        this.wcm = WorldChunkManager.threadLocal(this);
     }
 
     @Override
@@ -124,11 +140,7 @@ public Chunk getChunkAtBlock(int x, int y, int z) {
 
     @Override
     public Chunk getChunk(int x, int z) {
-        return getChunk(VECTOR_2_I_CACHE.get(x, z));
-    }
-
-    private Chunk getChunk(Vector2i pos) {
-        return chunkCache.get(pos);
+        return chunkCache.get(x, z);
     }
 
     @Override
@@ -142,40 +154,57 @@ private Region getRegion(Vector2i pos) {
 
     @Override
     public Collection<Vector2i> listRegions() {
-        ArrayList<File> regionFiles = new ArrayList<>();
-        File[] firstFolders = worldFolder.toFile().listFiles();
-        ArrayList<File> filteredFolders = new ArrayList<>(Arrays.asList(firstFolders));
-        filteredFolders.removeIf(s -> !s.isDirectory() || s.getName().equals("region") || s.getName().equals("players"));
-        for (File filteredFolder : filteredFolders) {
-            File[] secondFolders = filteredFolder.listFiles();
-            for (File secondFolder : secondFolders) {
-                File[] files = secondFolder.listFiles();
-                for (File file : files) {
-                    regionFiles.add(file);
-                }
-            }
+        Set<Vector2i> regions = new HashSet<>();
+        for (Vector2i chunk : chunkScanner.scan()) {
+            regions.add(VECTOR_2_I_CACHE.get(chunk.getX() >> 5, chunk.getY() >> 5));
         }
+        return regions;
+    }
 
-        List<Vector2i> regions = new ArrayList<>(regionFiles.size());
+    @Override
+    public Path getRegionFolder() {
+        return worldFolder;
+    }
 
-        for (File file : regionFiles) {
-            if (RegionType.forFileName(file.getName()) == null) continue;
-            if (file.length() <= 0) continue;
+    @Override
+    public Vector2i getRegionPosition(Path file) {
+        Vector2i chunk = DatChunkScanner.parseChunkFileName(file.getFileName().toString());
+        if (chunk == null) return null;
+        return VECTOR_2_I_CACHE.get(chunk.getX() >> 5, chunk.getY() >> 5);
+    }
+
+    /**
+     * Only the (two levels of) chunk-folders can contain chunk-files
+     */
+    @Override
+    public boolean isRegionSubFolder(Path folder) {
+        if (!folder.startsWith(worldFolder)) return false;
 
-            try {
-                String[] filenameParts = file.getName().split("\\.");
-                int rX = Integer.parseInt(filenameParts[1], 36);
-                int rZ = Integer.parseInt(filenameParts[2], 36);
+        Path relative = worldFolder.relativize(folder);
+        int nameCount = relative.getNameCount();
+        if (nameCount < 1 || nameCount > 2) return false;
 
-                regions.add(new Vector2i(rX, rZ));
-            } catch (NumberFormatException ignore) {}
+        for (int i = 0; i < nameCount; i++) {
+            if (!DatChunkScanner.isChunkFolderName(relative.getName(i).toString())) return false;
         }
 
-        for (Vector2i region : regions) {
-            Logger.global.logInfo(DatRegion.getRegionFileName(region.getX(), region.getY()));
+        return true;
+    }
+
+    @Override
+    public void preloadRegionChunks(int regionX, int regionZ, Collection<Vector2i> chunks) {
+        List<Vector2i> regionChunks = new ArrayList<>();
+        for (Vector2i chunk : chunks) {
+            if (chunk.getX() >> 5 == regionX && chunk.getY() >> 5 == regionZ) regionChunks.add(chunk);
         }
 
-        return regions;
+        if (regionChunks.isEmpty()) return;
+
+        try {
+            chunkCache.preload(getRegion(regionX, regionZ), regionChunks, ignoreMissingLightData);
+        } catch (IOException | RuntimeException ex) {
+            Logger.global.logDebug("Failed to preload chunks of region (x:" + regionX + ", z:" + regionZ + "): " + ex);
+        }
     }
 
     @Override
@@ -185,7 +214,7 @@ public void invalidateChunkCache() {
 
     @Override
     public void invalidateChunkCache(int x, int z) {
-        chunkCache.invalidate(VECTOR_2_I_CACHE.get(x, z));
+        chunkCache.invalidate(x, z);
     }
 
     @Override
@@ -193,43 +222,44 @@ public void cleanUpChunkCache() {
         chunkCache.cleanUp();
     }
 
+    @Override
+    public ChunkLoadFailures getChunkLoadFailures() {
+        return chunkCache.getLoadFailures();
+    }
+
     private Region loadRegion(Vector2i regionPos) {
         return loadRegion(regionPos.getX(), regionPos.getY());
     }
 
     Region loadRegion(int x, int z) {
-        return RegionType.loadRegion(this, worldFolder, x, z);
-    }
-
-    private Chunk loadChunk(Vector2i chunkPos) {
-        return loadChunk(chunkPos.getX(), chunkPos.getY());
-    }
-
-    Chunk loadChunk(int x, int z) {
-        final int tries = 3;
-        final int tryInterval = 1000;
-
-        Exception loadException = null;
-        for (int i = 0; i < tries; i++) {
-            try {
-                return getRegion(x, z)
-                        .loadChunk(x, z, ignoreMissingLightData);
-            } catch(IOException | RuntimeException e) {
-                if (loadException != null) e.addSuppressed(loadException);
-                loadException = e;
-
-                if (i + 1 < tries) {
-                    try {
-                        Thread.sleep(tryInterval);
-                    } catch (InterruptedException ex) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-            }
+        Region region = new DatVirtualRegion(this, VECTOR_2_I_CACHE.get(x, z));
+        if (chunkSnapshotStore != null) region = chunkSnapshotStore.wrap(region);
+        return region;
+    }
+
+    private void onRegionRemoved(Vector2i regionPos, Region region, RemovalCause cause) {
+        if (region == null) return;
+
+        try {
+            region.close();
+        } catch (IOException ex) {
+            Logger.global.logDebug("Failed to close region (x:" + regionPos.getX() + ", z:" + regionPos.getY() + "): " + ex);
         }
+    }
+
+    /**
+     * Creates the region for the single file of the specified chunk
+     */
+    Region loadChunkRegion(int chunkX, int chunkZ) {
+        return RegionType.loadRegion(this, worldFolder, chunkX, chunkZ);
+    }
+
+    DatChunkScanner getChunkScanner() {
+        return chunkScanner;
+    }
 
-        Logger.global.logDebug("Unexpected exception trying to load chunk (x:" + x + ", z:" + z + "):" + loadException);
-        return EmptyChunk.INSTANCE;
+    Chunk loadChunk(int x, int z) throws IOException {
+        return getRegion(x >> 5, z >> 5)
+                .loadChunk(x, z, ignoreMissingLightData);
     }
 }
@@ -29,6 +29,7 @@
 import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.api.gson.MarkerGson;
 import de.bluecolored.bluemap.api.markers.MarkerSet;
+import de.bluecolored.bluemap.core.dat.DatWorld;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.hires.HiresModelManager;
 import de.bluecolored.bluemap.core.map.lowres.LowresTileManager;
@@ -52,6 +53,7 @@ public class BmMap {
     public static final String META_FILE_SETTINGS = "settings.json";
     public static final String META_FILE_TEXTURES = "textures.json";
     public static final String META_FILE_RENDER_STATE = ".rstate";
+    public static final String META_FILE_CHANGE_INDEX = ".rindex";
     public static final String META_FILE_MARKERS = "live/markers.json";
     public static final String META_FILE_PLAYERS = "live/players.json";
 
@@ -64,6 +66,7 @@ public class BmMap {
 
     private final ResourcePack resourcePack;
     private final MapRenderState renderState;
+    private final WorldChangeIndex changeIndex;
     private final TextureGallery textureGallery;
 
     private final HiresModelManager hiresModelManager;
@@ -86,6 +89,7 @@ public BmMap(String id, String name, String worldId, World world, Storage storag
         this.mapSettings = Objects.requireNonNull(settings);
 
         this.renderState = new MapRenderState();
+        this.changeIndex = new WorldChangeIndex();
         loadRenderState();
 
         this.textureGallery = loadTextureGallery();
@@ -156,6 +160,36 @@ private void loadRenderState() throws IOException {
                 Logger.global.logWarning("Failed to load render-state for map '" + getId() + "': " + ex);
             }
         }
+
+        Optional<InputStream> changeIndexData = storage.readMeta(id, META_FILE_CHANGE_INDEX);
+        if (changeIndexData.isPresent()) {
+            try (InputStream in = changeIndexData.get()){
+                this.changeIndex.load(in);
+            } catch (IOException ex) {
+                Logger.global.logWarning("Failed to load change-index for map '" + getId() + "': " + ex);
+            }
+        }
+
+        // the render-state and change-index are keyed by region-positions, they are useless if the region-grid changed
+        Vector2i regionGridSize = world.getRegionGrid().getGridSize();
+        Vector2i stateRegionGridSize = this.renderState.getRegionGridSize();
+        if (rstateData.isPresent() && stateRegionGridSize == null) stateRegionGridSize = getLegacyRegionGridSize(world);
+        if (stateRegionGridSize != null && !stateRegionGridSize.equals(regionGridSize)) {
+            Logger.global.logInfo("The region-layout of the world of map '" + getId() + "' has changed, " +
+                    "the whole map will be rendered again.");
+            this.renderState.reset();
+            this.changeIndex.reset();
+        }
+        this.renderState.setRegionGridSize(regionGridSize);
+    }
+
+    /**
+     * Returns the region-grid size that render-states were based on, before the region-grid was saved with them.
+     * Alpha-worlds used one region per chunk back then.
+     */
+    private static Vector2i getLegacyRegionGridSize(World world) {
+        if (world instanceof DatWorld) return world.getChunkGrid().getGridSize();
+        return world.getRegionGrid().getGridSize();
     }
 
     public synchronized void saveRenderState() {
@@ -164,6 +198,12 @@ public synchronized void saveRenderState() {
         } catch (IOException ex){
             Logger.global.logError("Failed to save render-state for map: '" + this.id + "'!", ex);
         }
+
+        try (OutputStream out = storage.writeMeta(id, META_FILE_CHANGE_INDEX)) {
+            this.changeIndex.save(out);
+        } catch (IOException ex){
+            Logger.global.logError("Failed to save change-index for map: '" + this.id + "'!", ex);
+        }
     }
 
     private TextureGallery loadTextureGallery() throws IOException {
@@ -255,6 +295,10 @@ public MapRenderState getRenderState() {
         return renderState;
     }
 
+    public WorldChangeIndex getChangeIndex() {
+        return changeIndex;
+    }
+
     public HiresModelManager getHiresModelManager() {
         return hiresModelManager;
     }
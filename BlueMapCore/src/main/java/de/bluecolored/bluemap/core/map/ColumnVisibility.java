@@ -0,0 +1,137 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector3i;
+import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.world.Chunk;
+import de.bluecolored.bluemap.core.world.LightData;
+import de.bluecolored.bluemap.core.world.World;
+
+/**
+ * The result of a pre-pass over all block-columns of an area, that determines for each column the lowest y-level
+ * where a block could possibly produce a visible face.<br>
+ * <br>
+ * Below that level, all blocks are in a "cave" that gets removed (below the cave-detection limits)
+ * and are completely dark, and so are all the blocks next to them.
+ * Such blocks don't produce any faces and don't have any effect on the tile-meta, so they don't need to be rendered at all.
+ */
+public class ColumnVisibility {
+
+    private final int minX, minZ, sizeX, sizeZ;
+    private final int[] minVisibleY;
+
+    private ColumnVisibility(int minX, int minZ, int sizeX, int sizeZ) {
+        this.minX = minX;
+        this.minZ = minZ;
+        this.sizeX = sizeX;
+        this.sizeZ = sizeZ;
+        this.minVisibleY = new int[sizeX * sizeZ];
+    }
+
+    /**
+     * Returns the lowest y-level of the block-column that could produce visible faces.<br>
+     * Returns {@link Integer#MIN_VALUE} for columns outside the area of this pre-pass.
+     */
+    public int getMinVisibleY(int x, int z) {
+        x -= minX; z -= minZ;
+        if (x < 0 || x >= sizeX || z < 0 || z >= sizeZ) return Integer.MIN_VALUE;
+        return minVisibleY[z * sizeX + x];
+    }
+
+    /**
+     * Computes the visibility of all block-columns between min and max (inclusive) for the given world and render-settings.
+     */
+    public static ColumnVisibility compute(World world, RenderSettings renderSettings, Vector3i min, Vector3i max) {
+        int sizeX = max.getX() - min.getX() + 1;
+        int sizeZ = max.getZ() - min.getZ() + 1;
+        ColumnVisibility visibility = new ColumnVisibility(min.getX(), min.getZ(), Math.max(sizeX, 0), Math.max(sizeZ, 0));
+        if (sizeX <= 0 || sizeZ <= 0) return visibility;
+
+        // nothing can be removed above this level
+        int caveLimit = renderSettings.getRemoveCavesBelowY();
+
+        // the lowest lit block of each column, including a border of one column around the area
+        int borderSizeX = sizeX + 2;
+        int[] firstLitY = new int[borderSizeX * (sizeZ + 2)];
+        LightData light = new LightData(0, 0);
+        for (int z = -1; z <= sizeZ; z++) {
+            for (int x = -1; x <= sizeX; x++) {
+                firstLitY[(z + 1) * borderSizeX + x + 1] =
+                        findFirstLitY(world, renderSettings, min.getX() + x, min.getZ() + z, min.getY(), caveLimit, light);
+            }
+        }
+
+        for (int z = 0; z < sizeZ; z++) {
+            for (int x = 0; x < sizeX; x++) {
+                int wx = min.getX() + x, wz = min.getZ() + z;
+
+                Chunk chunk = world.getChunkAtBlock(wx, 0, wz);
+                long columnCaveLimit = Math.min(
+                        (long) caveLimit,
+                        (long) chunk.getOceanFloorY(wx, wz) + renderSettings.getCaveDetectionOceanFloor()
+                );
+
+                int i = (z + 1) * borderSizeX + x + 1;
+                long minY = Math.min(columnCaveLimit, (long) firstLitY[i] - 1); // the block below a lit block
+                minY = Math.min(minY, firstLitY[i - 1]);
+                minY = Math.min(minY, firstLitY[i + 1]);
+                minY = Math.min(minY, firstLitY[i - borderSizeX]);
+                minY = Math.min(minY, firstLitY[i + borderSizeX]);
+
+                visibility.minVisibleY[z * sizeX + x] = (int) Math.max(minY, Integer.MIN_VALUE);
+            }
+        }
+
+        return visibility;
+    }
+
+    /**
+     * Returns the lowest y-level (starting just below the lowest block of the column)
+     * where the block in the column is lit, or a value above the limit if there is none below it.
+     */
+    private static int findFirstLitY(World world, RenderSettings renderSettings, int x, int z, int minY, int limit, LightData light) {
+        // blocks outside the render-boundaries are rendered as air with sky-light
+        if (renderSettings.isRenderEdges() && !renderSettings.isInsideRenderBoundaries(x, z)) return Integer.MIN_VALUE;
+
+        int startY = Math.max(minY, world.getMinY(x, z)) - 1;
+        if (startY >= limit) return startY;
+
+        Chunk chunk = world.getChunkAtBlock(x, 0, z);
+        int renderMinY = renderSettings.getMinPos().getY();
+        boolean usesBlockLight = renderSettings.isCaveDetectionUsesBlockLight();
+
+        for (int y = startY; y < limit; y++) {
+            if (renderSettings.isRenderEdges() && y < renderMinY) return y;
+
+            chunk.getLightData(x, y, z, light);
+            if (light.getSkyLight() > 0) return y;
+            if (usesBlockLight && light.getBlockLight() > 0) return y;
+        }
+
+        return limit;
+    }
+
+}
@@ -38,6 +38,7 @@ public class MapRenderState {
 
     private final Map<Vector2i, Long> regionRenderTimes;
     private transient long latestRenderTime = -1;
+    private Vector2i regionGridSize = null;
 
     public MapRenderState() {
         regionRenderTimes = new HashMap<>();
@@ -75,6 +76,19 @@ public long getLatestRenderTime() {
 
     public synchronized void reset() {
         regionRenderTimes.clear();
+        latestRenderTime = -1;
+    }
+
+    /**
+     * Returns the size of the region-grid that the region-positions of this render-state are based on,
+     * or <code>null</code> if it is unknown (e.g. the render-state was saved by an older version)
+     */
+    public synchronized Vector2i getRegionGridSize() {
+        return regionGridSize;
+    }
+
+    public synchronized void setRegionGridSize(Vector2i regionGridSize) {
+        this.regionGridSize = regionGridSize;
     }
 
     public synchronized void save(OutputStream out) throws IOException {
@@ -92,12 +106,20 @@ public synchronized void save(OutputStream out) throws IOException {
                 dOut.writeLong(renderTime);
             }
 
+            // appended after the entries, so older versions can still read the render-state
+            if (regionGridSize != null) {
+                dOut.writeInt(regionGridSize.getX());
+                dOut.writeInt(regionGridSize.getY());
+            }
+
             dOut.flush();
         }
     }
 
     public synchronized void load(InputStream in) throws IOException {
         regionRenderTimes.clear();
+        latestRenderTime = -1;
+        regionGridSize = null;
 
         try (
                 DataInputStream dIn = new DataInputStream(new GZIPInputStream(in))
@@ -113,6 +135,11 @@ public synchronized void load(InputStream in) throws IOException {
 
                 regionRenderTimes.put(regionPos, renderTime);
             }
+
+            regionGridSize = new Vector2i(
+                    dIn.readInt(),
+                    dIn.readInt()
+            );
         } catch (EOFException ignore){} // ignoring a sudden end of stream, since it is save to only read as many as we can
     }
 
@@ -0,0 +1,169 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Remembers the size and last-modification time of each region-file at the time the region has last been rendered,
+ * so an update can skip regions whose files did not change without reading them.
+ */
+@DebugDump
+public class WorldChangeIndex {
+
+    private final Map<Vector2i, RegionFileState> regionStates;
+
+    public WorldChangeIndex() {
+        regionStates = new HashMap<>();
+    }
+
+    public synchronized void setRegionState(Vector2i regionPos, RegionFileState state) {
+        if (state == null) regionStates.remove(regionPos);
+        else regionStates.put(regionPos, state);
+    }
+
+    public synchronized RegionFileState getRegionState(Vector2i regionPos) {
+        return regionStates.get(regionPos);
+    }
+
+    /**
+     * Returns true if the given (current) state of the region-file is the same as it was when the region was last rendered.
+     */
+    public synchronized boolean isUnchanged(Vector2i regionPos, RegionFileState state) {
+        if (state == null) return false;
+        return state.equals(regionStates.get(regionPos));
+    }
+
+    public synchronized void reset() {
+        regionStates.clear();
+    }
+
+    public synchronized void save(OutputStream out) throws IOException {
+        try (
+                DataOutputStream dOut = new DataOutputStream(new GZIPOutputStream(out))
+        ) {
+            dOut.writeInt(regionStates.size());
+
+            for (Map.Entry<Vector2i, RegionFileState> entry : regionStates.entrySet()) {
+                Vector2i regionPos = entry.getKey();
+                RegionFileState state = entry.getValue();
+
+                dOut.writeInt(regionPos.getX());
+                dOut.writeInt(regionPos.getY());
+                dOut.writeLong(state.getSize());
+                dOut.writeLong(state.getLastModified());
+            }
+
+            dOut.flush();
+        }
+    }
+
+    public synchronized void load(InputStream in) throws IOException {
+        regionStates.clear();
+
+        try (
+                DataInputStream dIn = new DataInputStream(new GZIPInputStream(in))
+        ) {
+            int size = dIn.readInt();
+
+            for (int i = 0; i < size; i++) {
+                Vector2i regionPos = new Vector2i(
+                        dIn.readInt(),
+                        dIn.readInt()
+                );
+                long fileSize = dIn.readLong();
+                long lastModified = dIn.readLong();
+
+                regionStates.put(regionPos, new RegionFileState(fileSize, lastModified));
+            }
+        } catch (EOFException ignore){} // ignoring a sudden end of stream, since it is save to only read as many as we can
+    }
+
+    public static class RegionFileState {
+
+        private final long size;
+        private final long lastModified;
+
+        public RegionFileState(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RegionFileState that = (RegionFileState) o;
+            return size == that.size && lastModified == that.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified);
+        }
+
+        @Override
+        public String toString() {
+            return "RegionFileState{size=" + size + ", lastModified=" + lastModified + "}";
+        }
+
+        /**
+         * Reads the current state of the given region-file.<br>
+         * Returns <code>null</code> if the file does not exist, is not a regular file or can not be read.
+         */
+        public static RegionFileState read(Path regionFile) {
+            if (regionFile == null) return null;
+
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(regionFile, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) return null;
+                return new RegionFileState(attributes.size(), attributes.lastModifiedTime().toMillis());
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+
+    }
+
+}
@@ -34,6 +34,7 @@
 import de.bluecolored.bluemap.core.world.Grid;
 import de.bluecolored.bluemap.core.world.World;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -69,18 +70,44 @@ public void render(World world, Vector2i tile, TileMetaConsumer tileMetaConsumer
         renderer.render(world, modelMin, modelMax, model, tileMetaConsumer);
 
         if (save){
-            model.sort();
-            save(model, tile);
+            int mergedFaces = optimize(model, renderer.getRenderSettings());
+            long bytes = save(model, tile);
+
+            if (mergedFaces > 0) {
+                int faces = model.size();
+                long savedBytes = faces > 0 ? bytes * mergedFaces / faces : 0;
+                Logger.global.logDebug("Merged faces of hires-tile " + tile + ": " +
+                        (faces + mergedFaces) + " -> " + faces + " faces, " +
+                        bytes + " bytes (~" + savedBytes + " bytes saved)");
+            }
         }
 
         HiresTileModel.instancePool().recycleInstance(model);
     }
 
-    private void save(final HiresTileModel model, Vector2i tile) {
-        try (OutputStream os = storage.write(tile)) {
+    /**
+     * Prepares a rendered model for saving: merges its faces (if greedy-meshing is enabled) and sorts them by material.
+     * @return the number of faces that have been merged
+     */
+    static int optimize(HiresTileModel model, RenderSettings renderSettings) {
+        int mergedFaces = 0;
+        if (renderSettings.isGreedyMeshing())
+            mergedFaces = model.mergeFaces();
+
+        model.sort();
+        return mergedFaces;
+    }
+
+    /**
+     * Saves the model and returns the number of bytes that have been written (before compression)
+     */
+    private long save(final HiresTileModel model, Vector2i tile) {
+        try (CountingOutputStream os = new CountingOutputStream(storage.write(tile))) {
             model.writeBufferGeometryJson(os);
+            return os.count;
         } catch (IOException e){
             Logger.global.logError("Failed to save hires model: " + tile, e);
+            return 0;
         }
     }
 
@@ -91,4 +118,26 @@ public Grid getTileGrid() {
         return tileGrid;
     }
 
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+    }
+
 }
@@ -25,12 +25,17 @@
 package de.bluecolored.bluemap.core.map.hires;
 
 import com.flowpowered.math.vector.Vector3i;
+import de.bluecolored.bluemap.core.map.ColumnVisibility;
 import de.bluecolored.bluemap.core.map.TextureGallery;
 import de.bluecolored.bluemap.core.map.TileMetaConsumer;
+import de.bluecolored.bluemap.core.map.hires.blockmodel.BakedModelCache;
 import de.bluecolored.bluemap.core.map.hires.blockmodel.BlockStateModelFactory;
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.util.math.Color;
 import de.bluecolored.bluemap.core.world.BlockNeighborhood;
+import de.bluecolored.bluemap.core.world.BlockProperties;
+import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.Chunk;
 import de.bluecolored.bluemap.core.world.World;
 
 public class HiresModelRenderer {
@@ -38,11 +43,17 @@ public class HiresModelRenderer {
     private final ResourcePack resourcePack;
     private final TextureGallery textureGallery;
     private final RenderSettings renderSettings;
+    private final BakedModelCache bakedModels;
 
     public HiresModelRenderer(ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings) {
         this.resourcePack = resourcePack;
         this.textureGallery = textureGallery;
         this.renderSettings = renderSettings;
+        this.bakedModels = new BakedModelCache(resourcePack, textureGallery);
+    }
+
+    public RenderSettings getRenderSettings() {
+        return renderSettings;
     }
 
     public void render(World world, Vector3i modelMin, Vector3i modelMax, HiresTileModel model) {
@@ -55,9 +66,14 @@ public void render(World world, Vector3i modelMin, Vector3i modelMax, HiresTileM
         Vector3i modelAnchor = new Vector3i(modelMin.getX(), 0, modelMin.getZ());
 
         // create new for each tile-render since the factory is not threadsafe
-        BlockStateModelFactory modelFactory = new BlockStateModelFactory(resourcePack, textureGallery, renderSettings);
+        BlockStateModelFactory modelFactory = new BlockStateModelFactory(resourcePack, textureGallery, bakedModels, renderSettings);
+
+        // find the blocks at the bottom of each column that can't be visible anyways
+        ColumnVisibility columnVisibility = ColumnVisibility.compute(world, renderSettings, min, max);
 
         int maxHeight, minY, maxY;
+        int sectionEnd, skipMin, skipMax;
+        Chunk chunk;
         double topBlockLight;
         Color columnColor = new Color(), blockColor = new Color();
         BlockNeighborhood<?> block = new BlockNeighborhood<>(resourcePack, renderSettings, world, 0, 0, 0);
@@ -74,15 +90,43 @@ public void render(World world, Vector3i modelMin, Vector3i modelMax, HiresTileM
 
                 if (renderSettings.isInsideRenderBoundaries(x, z)) {
                     minY = Math.max(min.getY(), world.getMinY(x, z));
+                    minY = Math.max(minY, columnVisibility.getMinVisibleY(x, z));
                     maxY = Math.min(max.getY(), world.getMaxY(x, z));
 
+                    chunk = world.getChunkAtBlock(x, 0, z);
+                    sectionEnd = minY - 1;
+                    skipMin = 0; skipMax = -1;
+
                     for (y = minY; y <= maxY; y++) {
+                        // entering a new section: check which of its blocks can't produce any faces
+                        if (y > sectionEnd) {
+                            sectionEnd = y | 0xF;
+                            skipMin = 0; skipMax = -1;
+
+                            BlockState sectionState = chunk.getUniformSectionState(y >> 4);
+                            if (sectionState != null) {
+                                if (sectionState.isAir()) {
+                                    skipMin = y;
+                                    skipMax = sectionEnd;
+                                } else if (isHiddenInside(world, chunk, x, y >> 4, z, sectionState)) {
+                                    // all blocks that have the same culling block on each side
+                                    skipMin = Math.max(y & ~0xF, min.getY()) + 1;
+                                    skipMax = Math.min(sectionEnd, max.getY()) - 1;
+                                }
+                            }
+                        }
+
                         block.set(x, y, z);
                         if (!block.isInsideRenderBounds()) continue;
 
                         blockModel.initialize();
 
-                        modelFactory.render(block, blockModel, blockColor);
+                        if (y >= skipMin && y <= skipMax) {
+                            // this block has no visible faces, so only its light is relevant for the tile-meta
+                            blockColor.set(0, 0, 0, 0, true);
+                        } else {
+                            modelFactory.render(block, blockModel, blockColor);
+                        }
 
                         //update topBlockLight
                         if (
@@ -115,4 +159,33 @@ public void render(World world, Vector3i modelMin, Vector3i modelMax, HiresTileM
             }
         }
     }
+
+    /**
+     * Checks if the inner blocks of a section that is fully made of the given block-state are completely hidden,
+     * which is the case if the state is culling and the sections next to the block-column on all four sides
+     * are made of culling blocks as well.
+     */
+    private boolean isHiddenInside(World world, Chunk chunk, int x, int sectionY, int z, BlockState sectionState) {
+        if (sectionState.isWaterlogged()) return false;
+
+        BlockProperties properties = resourcePack.getBlockProperties(sectionState);
+        if (!properties.isCulling() || properties.isAlwaysWaterlogged()) return false;
+
+        return
+                isCullingSection(world, chunk, x, z, x - 1, z, sectionY) &&
+                isCullingSection(world, chunk, x, z, x + 1, z, sectionY) &&
+                isCullingSection(world, chunk, x, z, x, z - 1, sectionY) &&
+                isCullingSection(world, chunk, x, z, x, z + 1, sectionY);
+    }
+
+    private boolean isCullingSection(World world, Chunk chunk, int x, int z, int neighborX, int neighborZ, int sectionY) {
+        // blocks outside the render-boundaries are rendered as air
+        if (renderSettings.isRenderEdges() && !renderSettings.isInsideRenderBoundaries(neighborX, neighborZ)) return false;
+
+        if (neighborX >> 4 != x >> 4 || neighborZ >> 4 != z >> 4)
+            chunk = world.getChunkAtBlock(neighborX, 0, neighborZ);
+
+        BlockState state = chunk.getUniformSectionState(sectionY);
+        return state != null && !state.isAir() && resourcePack.getBlockProperties(state).isCulling();
+    }
 }
@@ -39,11 +39,26 @@
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 public class HiresTileModel {
     private static final double GROW_MULTIPLIER = 1.5;
 
+    /**
+     * The uvs of faces that have been merged by {@link #mergeFaces()} are repeating the texture once per block and are
+     * offset to always be at least this value. The webapp uses this to detect the uvs that need to be wrapped.
+     */
+    public static final int WRAPPED_UV_OFFSET = 2;
+
+    private static final double MERGE_EPSILON = 0.0001;
+
     // attributes         per-vertex * per-face
     private static final int
             FI_POSITION =          3 * 3,
@@ -613,6 +628,59 @@ private void writeRounded(JsonWriter json, double value) throws IOException {
         else json.value(d);
     }
 
+    /**
+     * Merges all quads (pairs of faces) that are covering exactly one block-face and are lying next to each other on the
+     * same plane, into bigger quads (greedy meshing).<br>
+     * Only quads with the same material, color, light, ambient-occlusion and uv-orientation, that are using the full
+     * texture, are merged. The uvs of the merged quads are repeating the texture for each block
+     * (see {@link #WRAPPED_UV_OFFSET}).
+     *
+     * @return the number of faces that have been removed
+     */
+    public int mergeFaces() {
+        int sizeBefore = size;
+
+        Map<MergeGroup, MergeGroup> groups = new HashMap<>();
+        MergeGroup probe = new MergeGroup();
+
+        // collect all mergeable quads and remove them from the model
+        int face = 0, write = 0;
+        while (face < sizeBefore) {
+            if (face + 1 < sizeBefore && probe.load(this, face)) {
+                MergeGroup group = groups.get(probe);
+                if (group == null) {
+                    group = probe.copy();
+                    groups.put(group, group);
+                }
+                group.cells.add(probe.cell);
+
+                face += 2;
+                continue;
+            }
+
+            if (face != write) copyFace(face, write);
+            face++; write++;
+        }
+        this.size = write;
+
+        // add the merged quads
+        for (MergeGroup group : groups.values()) {
+            group.build(this);
+        }
+
+        return sizeBefore - size;
+    }
+
+    private void copyFace(int from, int to) {
+        System.arraycopy(position, from * FI_POSITION, position, to * FI_POSITION, FI_POSITION);
+        System.arraycopy(uv, from * FI_UV, uv, to * FI_UV, FI_UV);
+        System.arraycopy(ao, from * FI_AO, ao, to * FI_AO, FI_AO);
+        System.arraycopy(color, from * FI_COLOR, color, to * FI_COLOR, FI_COLOR);
+        sunlight[to * FI_SUNLIGHT] = sunlight[from * FI_SUNLIGHT];
+        blocklight[to * FI_BLOCKLIGHT] = blocklight[from * FI_BLOCKLIGHT];
+        materialIndex[to * FI_MATERIAL_INDEX] = materialIndex[from * FI_MATERIAL_INDEX];
+    }
+
     public void sort() {
         if (size <= 1) return; // nothing to sort
 
@@ -726,4 +794,315 @@ public static InstancePool<HiresTileModel> instancePool() {
         return INSTANCE_POOL;
     }
 
+    private static boolean isNearInt(double value) {
+        return Math.abs(value - Math.rint(value)) < MERGE_EPSILON;
+    }
+
+    /**
+     * A group of quads that can be merged with each other, if they are next to each other.<br>
+     * The quad is the two faces (c0, c1, c2) and (c0, c2, c3). Its corners are described in plane-coordinates (u, v)
+     * relative to the corner with the smallest coordinates, as mask <code>du | dv &lt;&lt; 1</code>.
+     */
+    private static class MergeGroup {
+
+        // key
+        private int axis;
+        private long planeKey;
+        private int cornerMasks;
+        private int uvMapping;
+        private int material;
+        private int colorR, colorG, colorB;
+        private int aoBits;
+        private byte sunlight, blocklight;
+
+        // values
+        private double plane;
+        private final int[] corners = new int[4];
+        private int uvT0, uvT1, uvU0, uvU1, uvV0, uvV1;
+        private final List<Long> cells;
+
+        private long cell;
+
+        private MergeGroup() {
+            this.cells = new ArrayList<>();
+        }
+
+        /**
+         * Loads the quad starting at the given face into this group (as a probe),
+         * returns false if the faces are not a quad that can be merged.
+         */
+        private boolean load(HiresTileModel model, int face) {
+            int f1 = face, f2 = face + 1;
+            double[] position = model.position;
+            float[] uv = model.uv;
+            int p1 = f1 * FI_POSITION, p2 = f2 * FI_POSITION;
+            int t1 = f1 * FI_UV, t2 = f2 * FI_UV;
+
+            // the second face needs to be (c0, c2, c3) of the first face (c0, c1, c2)
+            for (int i = 0; i < 3; i++) {
+                if (position[p2 + i] != position[p1 + i]) return false;
+                if (position[p2 + 3 + i] != position[p1 + 6 + i]) return false;
+            }
+            for (int i = 0; i < 2; i++) {
+                if (uv[t2 + i] != uv[t1 + i]) return false;
+                if (uv[t2 + 2 + i] != uv[t1 + 4 + i]) return false;
+            }
+
+            // both faces need the same flat attributes
+            for (int i = 0; i < FI_COLOR; i++) {
+                if (model.color[f1 * FI_COLOR + i] != model.color[f2 * FI_COLOR + i]) return false;
+            }
+            if (model.sunlight[f1] != model.sunlight[f2]) return false;
+            if (model.blocklight[f1] != model.blocklight[f2]) return false;
+            if (model.materialIndex[f1] != model.materialIndex[f2]) return false;
+
+            float ao = model.ao[f1 * FI_AO];
+            for (int i = 0; i < FI_AO; i++) {
+                if (model.ao[f1 * FI_AO + i] != ao || model.ao[f2 * FI_AO + i] != ao) return false;
+            }
+
+            // corner positions: c0, c1, c2 from the first face and c3 from the second
+            int[] cornerIndices = {p1, p1 + 3, p1 + 6, p2 + 6};
+
+            // find the axis that the quad is perpendicular to
+            int axis = -1;
+            for (int a = 0; a < 3; a++) {
+                double value = position[p1 + a];
+                boolean flat = true;
+                for (int c = 1; c < 4; c++) {
+                    if (Math.abs(position[cornerIndices[c] + a] - value) >= MERGE_EPSILON) {
+                        flat = false;
+                        break;
+                    }
+                }
+                if (flat) {
+                    if (axis != -1) return false;
+                    axis = a;
+                }
+            }
+            if (axis == -1) return false;
+
+            int ua = axis == 0 ? 1 : 0;
+            int va = axis == 2 ? 1 : 2;
+
+            // the quad needs to cover exactly one block-face
+            int minU = Integer.MAX_VALUE, minV = Integer.MAX_VALUE;
+            for (int c = 0; c < 4; c++) {
+                double u = position[cornerIndices[c] + ua], v = position[cornerIndices[c] + va];
+                if (!isNearInt(u) || !isNearInt(v)) return false;
+                minU = Math.min(minU, (int) Math.rint(u));
+                minV = Math.min(minV, (int) Math.rint(v));
+            }
+
+            int cornerMasks = 0, foundMasks = 0;
+            int[] uvs = new int[8];
+            for (int c = 0; c < 4; c++) {
+                int du = (int) Math.rint(position[cornerIndices[c] + ua]) - minU;
+                int dv = (int) Math.rint(position[cornerIndices[c] + va]) - minV;
+                if (du < 0 || du > 1 || dv < 0 || dv > 1) return false;
+
+                int mask = du | dv << 1;
+                corners[c] = mask;
+                cornerMasks |= mask << (c * 2);
+                foundMasks |= 1 << mask;
+
+                // the uvs need to be the corners of the texture
+                int ti = c < 3 ? t1 + c * 2 : t2 + 4;
+                float u = uv[ti], v = uv[ti + 1];
+                if (!isNearInt(u) || !isNearInt(v)) return false;
+                int iu = (int) Math.rint(u), iv = (int) Math.rint(v);
+                if (iu < 0 || iu > 1 || iv < 0 || iv > 1) return false;
+                uvs[mask * 2] = iu;
+                uvs[mask * 2 + 1] = iv;
+            }
+            if (foundMasks != 0b1111) return false;
+
+            // the uvs need to be an affine mapping of the plane-coordinates that covers the full texture
+            int tU = uvs[0], tV = uvs[1];
+            int uU = uvs[2] - tU, uV = uvs[3] - tV;
+            int vU = uvs[4] - tU, vV = uvs[5] - tV;
+            if (uvs[6] != tU + uU + vU || uvs[7] != tV + uV + vV) return false;
+            if (uU * vV - uV * vU == 0) return false;
+
+            this.axis = axis;
+            this.plane = position[p1 + axis];
+            this.planeKey = Math.round(plane / MERGE_EPSILON);
+            this.cornerMasks = cornerMasks;
+            this.uvT0 = tU; this.uvT1 = tV;
+            this.uvU0 = uU; this.uvU1 = uV;
+            this.uvV0 = vU; this.uvV1 = vV;
+            this.uvMapping = tU | tV << 1 | (uU + 1) << 2 | (uV + 1) << 4 | (vU + 1) << 6 | (vV + 1) << 8;
+            this.material = model.materialIndex[f1];
+            this.colorR = Float.floatToIntBits(model.color[f1 * FI_COLOR]);
+            this.colorG = Float.floatToIntBits(model.color[f1 * FI_COLOR + 1]);
+            this.colorB = Float.floatToIntBits(model.color[f1 * FI_COLOR + 2]);
+            this.aoBits = Float.floatToIntBits(ao);
+            this.sunlight = model.sunlight[f1];
+            this.blocklight = model.blocklight[f1];
+            this.cell = cell(minU, minV);
+
+            return true;
+        }
+
+        private MergeGroup copy() {
+            MergeGroup copy = new MergeGroup();
+            copy.axis = axis;
+            copy.planeKey = planeKey;
+            copy.cornerMasks = cornerMasks;
+            copy.uvMapping = uvMapping;
+            copy.material = material;
+            copy.colorR = colorR;
+            copy.colorG = colorG;
+            copy.colorB = colorB;
+            copy.aoBits = aoBits;
+            copy.sunlight = sunlight;
+            copy.blocklight = blocklight;
+            copy.plane = plane;
+            System.arraycopy(corners, 0, copy.corners, 0, 4);
+            copy.uvT0 = uvT0; copy.uvT1 = uvT1;
+            copy.uvU0 = uvU0; copy.uvU1 = uvU1;
+            copy.uvV0 = uvV0; copy.uvV1 = uvV1;
+            return copy;
+        }
+
+        /**
+         * Greedily combines the cells of this group into rectangles and adds a quad for each rectangle to the model
+         */
+        private void build(HiresTileModel model) {
+            long[] sorted = new long[cells.size()];
+            for (int i = 0; i < sorted.length; i++) sorted[i] = cells.get(i);
+            Arrays.sort(sorted);
+
+            Set<Long> remaining = new HashSet<>(cells);
+            for (long start : sorted) {
+                if (!remaining.contains(start)) continue;
+
+                int u = cellU(start), v = cellV(start);
+
+                int w = 1;
+                while (remaining.contains(cell(u + w, v))) w++;
+
+                int h = 1;
+                expand:
+                while (true) {
+                    for (int du = 0; du < w; du++) {
+                        if (!remaining.contains(cell(u + du, v + h))) break expand;
+                    }
+                    h++;
+                }
+
+                for (int dv = 0; dv < h; dv++) {
+                    for (int du = 0; du < w; du++) {
+                        remaining.remove(cell(u + du, v + dv));
+                    }
+                }
+
+                addQuad(model, u, v, w, h);
+            }
+        }
+
+        private void addQuad(HiresTileModel model, int u, int v, int w, int h) {
+            int ua = axis == 0 ? 1 : 0;
+            int va = axis == 2 ? 1 : 2;
+            int uvOffset = WRAPPED_UV_OFFSET + Math.max(w, h);
+
+            double[] positions = new double[12];
+            float[] uvs = new float[8];
+            for (int c = 0; c < 4; c++) {
+                int du = (corners[c] & 1) * w;
+                int dv = (corners[c] >> 1) * h;
+
+                positions[c * 3 + axis] = plane;
+                positions[c * 3 + ua] = u + du;
+                positions[c * 3 + va] = v + dv;
+
+                uvs[c * 2] = uvT0 + uvU0 * du + uvV0 * dv + uvOffset;
+                uvs[c * 2 + 1] = uvT1 + uvU1 * du + uvV1 * dv + uvOffset;
+            }
+
+            int face1 = model.add(2);
+            int face2 = face1 + 1;
+
+            model.setPositions(face1,
+                    positions[0], positions[1], positions[2],
+                    positions[3], positions[4], positions[5],
+                    positions[6], positions[7], positions[8]
+            );
+            model.setPositions(face2,
+                    positions[0], positions[1], positions[2],
+                    positions[6], positions[7], positions[8],
+                    positions[9], positions[10], positions[11]
+            );
+
+            model.setUvs(face1,
+                    uvs[0], uvs[1],
+                    uvs[2], uvs[3],
+                    uvs[4], uvs[5]
+            );
+            model.setUvs(face2,
+                    uvs[0], uvs[1],
+                    uvs[4], uvs[5],
+                    uvs[6], uvs[7]
+            );
+
+            float ao = Float.intBitsToFloat(aoBits);
+            float r = Float.intBitsToFloat(colorR), g = Float.intBitsToFloat(colorG), b = Float.intBitsToFloat(colorB);
+            for (int face = face1; face <= face2; face++) {
+                model.setAOs(face, ao, ao, ao);
+                model.setColor(face, r, g, b);
+                model.setSunlight(face, sunlight);
+                model.setBlocklight(face, blocklight);
+                model.setMaterialIndex(face, material);
+            }
+        }
+
+        private static long cell(int u, int v) {
+            // flip the sign-bit of u so the cells are sorted by v and then by u
+            return (long) v << 32 | (u ^ 0x80000000) & 0xFFFFFFFFL;
+        }
+
+        private static int cellU(long cell) {
+            return (int) cell ^ 0x80000000;
+        }
+
+        private static int cellV(long cell) {
+            return (int) (cell >> 32);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            MergeGroup that = (MergeGroup) o;
+            return axis == that.axis &&
+                    planeKey == that.planeKey &&
+                    cornerMasks == that.cornerMasks &&
+                    uvMapping == that.uvMapping &&
+                    material == that.material &&
+                    colorR == that.colorR &&
+                    colorG == that.colorG &&
+                    colorB == that.colorB &&
+                    aoBits == that.aoBits &&
+                    sunlight == that.sunlight &&
+                    blocklight == that.blocklight;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = axis;
+            result = 31 * result + Long.hashCode(planeKey);
+            result = 31 * result + cornerMasks;
+            result = 31 * result + uvMapping;
+            result = 31 * result + material;
+            result = 31 * result + colorR;
+            result = 31 * result + colorG;
+            result = 31 * result + colorB;
+            result = 31 * result + aoBits;
+            result = 31 * result + sunlight;
+            result = 31 * result + blocklight;
+            return result;
+        }
+
+    }
+
 }
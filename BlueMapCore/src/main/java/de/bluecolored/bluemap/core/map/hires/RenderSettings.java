@@ -104,4 +104,13 @@ default boolean isInsideRenderBoundaries(int x, int y, int z) {
 
     boolean isSaveHiresLayer();
 
+    /**
+     * Whether faces of full blocks that are lying next to each other on the same plane (and look the same)
+     * are merged into bigger faces before the hires-tiles are saved.<br>
+     * This reduces the size of the tiles, but the webapp needs to wrap the (repeating) uvs of those faces.
+     */
+    default boolean isGreedyMeshing() {
+        return false;
+    }
+
 }
@@ -0,0 +1,99 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires.blockmodel;
+
+import de.bluecolored.bluemap.core.resources.resourcepack.texture.Texture;
+
+/**
+ * A {@link de.bluecolored.bluemap.core.resources.resourcepack.blockstate.Variant} of a block-model,
+ * baked into quads with their final positions (relative to the block), uvs and texture-ids.<br>
+ * Only the parts that depend on the surroundings of a block (culling, light, ambient-occlusion and tint)
+ * are left to be calculated for each rendered block.
+ */
+public class BakedModel {
+
+    public static final BakedModel EMPTY = new BakedModel(new Quad[0]);
+
+    final Quad[] quads;
+
+    BakedModel(Quad[] quads) {
+        this.quads = quads;
+    }
+
+    public int getQuadCount() {
+        return quads.length;
+    }
+
+    static class Quad {
+
+        /**
+         * The 4 corners (x, y, z) of the quad, the quad is rendered as the two faces (0, 1, 2) and (0, 2, 3)
+         */
+        final double[] positions;
+
+        /**
+         * The uvs (u, v) of the 4 corners
+         */
+        final float[] uvs;
+
+        final int textureId;
+        final boolean tinted;
+
+        /**
+         * The rotation-relative offset to the block that culls this quad, or <code>null</code> if the quad is never culled
+         */
+        final int[] cullOffset;
+
+        /**
+         * The rotation-relative offset to the block that this quad is facing
+         */
+        final int[] lightOffset;
+
+        /**
+         * For each of the 4 corners the rotation-relative offsets (x, y, z) of the blocks that are occluding the corner
+         * for ambient-occlusion, or <code>null</code> if the model has no ambient-occlusion
+         */
+        final int[][] aoOffsets;
+
+        /**
+         * The texture that contributes to the map-color of the block, or <code>null</code> if the quad is not facing up
+         */
+        final Texture mapColorTexture;
+
+        Quad(double[] positions, float[] uvs, int textureId, boolean tinted, int[] cullOffset, int[] lightOffset,
+             int[][] aoOffsets, Texture mapColorTexture) {
+            this.positions = positions;
+            this.uvs = uvs;
+            this.textureId = textureId;
+            this.tinted = tinted;
+            this.cullOffset = cullOffset;
+            this.lightOffset = lightOffset;
+            this.aoOffsets = aoOffsets;
+            this.mapColorTexture = mapColorTexture;
+        }
+
+    }
+
+}
@@ -0,0 +1,338 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires.blockmodel;
+
+import com.flowpowered.math.TrigMath;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
+import com.flowpowered.math.vector.Vector4f;
+import de.bluecolored.bluemap.core.map.TextureGallery;
+import de.bluecolored.bluemap.core.resources.ResourcePath;
+import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.BlockModel;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.Element;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.Face;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockstate.Variant;
+import de.bluecolored.bluemap.core.resources.resourcepack.texture.Texture;
+import de.bluecolored.bluemap.core.util.Direction;
+import de.bluecolored.bluemap.core.util.math.MatrixM4f;
+import de.bluecolored.bluemap.core.util.math.VectorM2f;
+import de.bluecolored.bluemap.core.util.math.VectorM3f;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bakes the {@link Variant}s of a {@link ResourcePack} into {@link BakedModel}s and caches them.<br>
+ * The texture-ids of the baked models are taken from the {@link TextureGallery}, so a cache is only valid for the
+ * map that the texture-gallery belongs to.<br>
+ * <br>
+ * <i>This class is thread-safe.</i>
+ */
+public class BakedModelCache {
+    private static final float BLOCK_SCALE = 1f / 16f;
+
+    private static final Direction[] FACE_DIRECTIONS = {
+            Direction.DOWN, Direction.UP, Direction.NORTH, Direction.SOUTH, Direction.WEST, Direction.EAST
+    };
+
+    private static final int[][] FACE_CORNERS = {
+            {0, 2, 3, 1}, // down
+            {5, 7, 6, 4}, // up
+            {2, 0, 4, 6}, // north
+            {1, 3, 7, 5}, // south
+            {0, 1, 5, 4}, // west
+            {3, 2, 6, 7}  // east
+    };
+
+    private final ResourcePack resourcePack;
+    private final TextureGallery textureGallery;
+
+    private final Map<Variant, BakedModel> models;
+
+    public BakedModelCache(ResourcePack resourcePack, TextureGallery textureGallery) {
+        this.resourcePack = resourcePack;
+        this.textureGallery = textureGallery;
+
+        this.models = new ConcurrentHashMap<>();
+    }
+
+    public BakedModel get(Variant variant) {
+        BakedModel model = models.get(variant);
+        if (model != null) return model;
+
+        model = bake(variant);
+        BakedModel previous = models.putIfAbsent(variant, model);
+        return previous != null ? previous : model;
+    }
+
+    private BakedModel bake(Variant variant) {
+        BlockModel modelResource = variant.getModel().getResource(resourcePack::getBlockModel);
+        if (modelResource == null) return BakedModel.EMPTY;
+
+        Element[] elements = modelResource.getElements();
+        if (elements == null) return BakedModel.EMPTY;
+
+        MatrixM4f variantTransform = null;
+        if (variant.isRotated()) {
+            variantTransform = new MatrixM4f()
+                    .translate(-0.5f, -0.5f, -0.5f)
+                    .multiplyTo(variant.getRotationMatrix())
+                    .translate(0.5f, 0.5f, 0.5f);
+        }
+
+        List<BakedModel.Quad> quads = new ArrayList<>();
+        VectorM3f[] corners = new VectorM3f[8];
+        for (int i = 0; i < corners.length; i++) corners[i] = new VectorM3f(0, 0, 0);
+
+        for (Element element : elements) {
+            Vector3f from = element.getFrom();
+            Vector3f to = element.getTo();
+
+            float
+                    minX = Math.min(from.getX(), to.getX()),
+                    minY = Math.min(from.getY(), to.getY()),
+                    minZ = Math.min(from.getZ(), to.getZ()),
+                    maxX = Math.max(from.getX(), to.getX()),
+                    maxY = Math.max(from.getY(), to.getY()),
+                    maxZ = Math.max(from.getZ(), to.getZ());
+
+            VectorM3f[] c = corners;
+            c[0].x = minX; c[0].y = minY; c[0].z = minZ;
+            c[1].x = minX; c[1].y = minY; c[1].z = maxZ;
+            c[2].x = maxX; c[2].y = minY; c[2].z = minZ;
+            c[3].x = maxX; c[3].y = minY; c[3].z = maxZ;
+            c[4].x = minX; c[4].y = maxY; c[4].z = minZ;
+            c[5].x = minX; c[5].y = maxY; c[5].z = maxZ;
+            c[6].x = maxX; c[6].y = maxY; c[6].z = minZ;
+            c[7].x = maxX; c[7].y = maxY; c[7].z = maxZ;
+
+            MatrixM4f elementTransform = new MatrixM4f()
+                    .copy(element.getRotation().getMatrix())
+                    .scale(BLOCK_SCALE, BLOCK_SCALE, BLOCK_SCALE);
+
+            for (int f = 0; f < FACE_DIRECTIONS.length; f++) {
+                int[] fc = FACE_CORNERS[f];
+                BakedModel.Quad quad = bakeQuad(variant, modelResource, element, FACE_DIRECTIONS[f],
+                        c[fc[0]], c[fc[1]], c[fc[2]], c[fc[3]], elementTransform, variantTransform);
+                if (quad != null) quads.add(quad);
+            }
+        }
+
+        return new BakedModel(quads.toArray(BakedModel.Quad[]::new));
+    }
+
+    private BakedModel.Quad bakeQuad(
+            Variant variant, BlockModel modelResource, Element element, Direction faceDir,
+            VectorM3f c0, VectorM3f c1, VectorM3f c2, VectorM3f c3,
+            MatrixM4f elementTransform, MatrixM4f variantTransform
+    ) {
+        Face face = element.getFaces().get(faceDir);
+        if (face == null) return null;
+
+        Vector3i faceDirVector = faceDir.toVector();
+
+        // culling and light
+        int[] cullOffset = face.getCullface() != null ? rotationRelative(variant, face.getCullface().toVector()) : null;
+        int[] lightOffset = rotationRelative(variant, faceDirVector);
+
+        // positions
+        double[] positions = {
+                c0.x, c0.y, c0.z,
+                c1.x, c1.y, c1.z,
+                c2.x, c2.y, c2.z,
+                c3.x, c3.y, c3.z
+        };
+        transform(positions, elementTransform);
+        if (variantTransform != null) transform(positions, variantTransform);
+
+        // texture
+        ResourcePath<Texture> texturePath = face.getTexture().getTexturePath(modelResource.getTextures()::get);
+        int textureId = textureGallery.get(texturePath);
+
+        // uvs
+        Vector4f uvRaw = face.getUv();
+        float
+                uvx = uvRaw.getX() / 16f,
+                uvy = uvRaw.getY() / 16f,
+                uvz = uvRaw.getZ() / 16f,
+                uvw = uvRaw.getW() / 16f;
+
+        VectorM2f[] rawUvs = {
+                new VectorM2f(uvx, uvw),
+                new VectorM2f(uvz, uvw),
+                new VectorM2f(uvz, uvy),
+                new VectorM2f(uvx, uvy)
+        };
+
+        // face-rotation
+        VectorM2f[] uvs = new VectorM2f[4];
+        int rotationSteps = Math.floorDiv(face.getRotation(), 90) % 4;
+        if (rotationSteps < 0) rotationSteps += 4;
+        for (int i = 0; i < 4; i++)
+            uvs[i] = rawUvs[(rotationSteps + i) % 4];
+
+        // UV-Lock counter-rotation
+        float uvRotation = 0f;
+        if (variant.isUvlock() && variant.isRotated()) {
+            float xRotSin = TrigMath.sin(variant.getX() * TrigMath.DEG_TO_RAD);
+            float xRotCos = TrigMath.cos(variant.getX() * TrigMath.DEG_TO_RAD);
+
+            uvRotation =
+                    variant.getY() * (faceDirVector.getY() * xRotCos + faceDirVector.getZ() * xRotSin) +
+                    variant.getX() * (1 - faceDirVector.getY());
+        }
+
+        // rotate uv's
+        if (uvRotation != 0){
+            uvRotation *= TrigMath.DEG_TO_RAD;
+            float cx = TrigMath.cos(uvRotation), cy = TrigMath.sin(uvRotation);
+            for (VectorM2f uv : uvs) {
+                uv.translate(-0.5f, -0.5f);
+                uv.rotate(cx, cy);
+                uv.translate(0.5f, 0.5f);
+            }
+        }
+
+        float[] uvArray = {
+                uvs[0].x, uvs[0].y,
+                uvs[1].x, uvs[1].y,
+                uvs[2].x, uvs[2].y,
+                uvs[3].x, uvs[3].y
+        };
+
+        // AO
+        int[][] aoOffsets = null;
+        if (modelResource.isAmbientocclusion()) {
+            aoOffsets = new int[][]{
+                    aoOffsets(variant, c0, faceDirVector),
+                    aoOffsets(variant, c1, faceDirVector),
+                    aoOffsets(variant, c2, faceDirVector),
+                    aoOffsets(variant, c3, faceDirVector)
+            };
+        }
+
+        // if is top face use texture for the map-color
+        Texture mapColorTexture = null;
+        VectorM3f faceRotationVector = new VectorM3f(
+                faceDirVector.getX(),
+                faceDirVector.getY(),
+                faceDirVector.getZ()
+        );
+        faceRotationVector.rotateAndScale(element.getRotation().getMatrix());
+        if (variant.isRotated()) faceRotationVector.transform(variant.getRotationMatrix());
+        if (faceRotationVector.y > 0.01 && texturePath != null) {
+            mapColorTexture = texturePath.getResource(resourcePack::getTexture);
+        }
+
+        return new BakedModel.Quad(positions, uvArray, textureId, face.getTintindex() >= 0,
+                cullOffset, lightOffset, aoOffsets, mapColorTexture);
+    }
+
+    /**
+     * Returns the offsets (relative to the rotation of the variant) of all blocks that need to be tested for
+     * ambient-occlusion of the vertex
+     */
+    private static int[] aoOffsets(Variant variant, VectorM3f vertex, Vector3i dirVec) {
+        int x = 0;
+        if (vertex.x == 16){
+            x = 1;
+        } else if (vertex.x == 0){
+            x = -1;
+        }
+
+        int y = 0;
+        if (vertex.y == 16){
+            y = 1;
+        } else if (vertex.y == 0){
+            y = -1;
+        }
+
+        int z = 0;
+        if (vertex.z == 16){
+            z = 1;
+        } else if (vertex.z == 0){
+            z = -1;
+        }
+
+        int[] offsets = new int[12];
+        int count = 0;
+
+        if (x * dirVec.getX() + y * dirVec.getY() > 0)
+            count = addOffset(offsets, count, rotationRelative(variant, x, y, 0));
+
+        if (x * dirVec.getX() + z * dirVec.getZ() > 0)
+            count = addOffset(offsets, count, rotationRelative(variant, x, 0, z));
+
+        if (y * dirVec.getY() + z * dirVec.getZ() > 0)
+            count = addOffset(offsets, count, rotationRelative(variant, 0, y, z));
+
+        if (x * dirVec.getX() + y * dirVec.getY() + z * dirVec.getZ() > 0)
+            count = addOffset(offsets, count, rotationRelative(variant, x, y, z));
+
+        int[] result = new int[count];
+        System.arraycopy(offsets, 0, result, 0, count);
+        return result;
+    }
+
+    private static int addOffset(int[] offsets, int count, int[] offset) {
+        System.arraycopy(offset, 0, offsets, count, 3);
+        return count + 3;
+    }
+
+    private static int[] rotationRelative(Variant variant, Vector3i direction) {
+        return rotationRelative(variant, direction.getX(), direction.getY(), direction.getZ());
+    }
+
+    private static int[] rotationRelative(Variant variant, int dx, int dy, int dz) {
+        VectorM3f direction = new VectorM3f(dx, dy, dz);
+        if (variant.isRotated()) direction.transform(variant.getRotationMatrix());
+
+        return new int[]{
+                Math.round(direction.x),
+                Math.round(direction.y),
+                Math.round(direction.z)
+        };
+    }
+
+    /**
+     * Transforms the positions the same way {@link de.bluecolored.bluemap.core.map.hires.HiresTileModel} does
+     */
+    private static void transform(double[] positions, MatrixM4f t) {
+        double x, y, z;
+        for (int i = 0; i < positions.length; i += 3) {
+            x = positions[i    ];
+            y = positions[i + 1];
+            z = positions[i + 2];
+
+            positions[i    ] = t.m00 * x + t.m01 * y + t.m02 * z + t.m03;
+            positions[i + 1] = t.m10 * x + t.m11 * y + t.m12 * z + t.m13;
+            positions[i + 2] = t.m20 * x + t.m21 * y + t.m22 * z + t.m23;
+        }
+    }
+
+}
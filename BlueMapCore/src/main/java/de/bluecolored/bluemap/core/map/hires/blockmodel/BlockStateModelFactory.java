@@ -30,25 +30,21 @@
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.BlockModel;
 import de.bluecolored.bluemap.core.resources.resourcepack.blockstate.Variant;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockstate.VariantSet;
 import de.bluecolored.bluemap.core.util.math.Color;
 import de.bluecolored.bluemap.core.world.BlockNeighborhood;
 import de.bluecolored.bluemap.core.world.BlockState;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class BlockStateModelFactory {
 
     private final ResourcePack resourcePack;
     private final ResourceModelBuilder resourceModelBuilder;
     private final LiquidModelBuilder liquidModelBuilder;
 
-    private final List<Variant> variants = new ArrayList<>();
-
-    public BlockStateModelFactory(ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings) {
+    public BlockStateModelFactory(ResourcePack resourcePack, TextureGallery textureGallery, BakedModelCache bakedModels, RenderSettings renderSettings) {
         this.resourcePack = resourcePack;
 
-        this.resourceModelBuilder = new ResourceModelBuilder(resourcePack, textureGallery, renderSettings);
+        this.resourceModelBuilder = new ResourceModelBuilder(resourcePack, bakedModels, renderSettings);
         this.liquidModelBuilder = new LiquidModelBuilder(resourcePack, textureGallery, renderSettings);
     }
 
@@ -82,16 +78,15 @@ public void render(BlockNeighborhood<?> block, BlockState blockState, BlockModel
     private void renderModel(BlockNeighborhood<?> block, BlockState blockState, BlockModelView blockModel, Color blockColor) {
         int modelStart = blockModel.getStart();
 
-        var stateResource = resourcePack.getBlockState(blockState);
-        if (stateResource == null) return;
+        VariantSet[] variantSets = resourcePack.getVariantSets(blockState);
+        if (variantSets.length == 0) return;
 
         float blockColorOpacity = 0;
-        variants.clear();
-        stateResource.forEach(blockState, block.getX(), block.getY(), block.getZ(), variants::add);
 
         //noinspection ForLoopReplaceableByForEach
-        for (int i = 0; i < variants.size(); i++) {
-            Variant variant = variants.get(i);
+        for (int i = 0; i < variantSets.length; i++) {
+            Variant variant = variantSets[i].getVariant(block.getX(), block.getY(), block.getZ());
+            if (variant == null) continue;
 
             BlockModel modelResource = variant.getModel().getResource(resourcePack::getBlockModel);
             if (modelResource == null) continue;
@@ -0,0 +1,118 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import de.bluecolored.bluemap.core.world.BlockState;
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.StringTag;
+import net.querz.nbt.Tag;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decodes the block-state entries of section-palettes (<code>{Name: ..., Properties: {...}}</code>).<br>
+ * <br>
+ * The same few thousand block-states appear in the palettes of almost every section. So the decoded and
+ * {@link BlockState#intern() interned} block-states are cached by the raw (not yet lower-cased) strings of their
+ * palette-entry, and a palette-entry that has been seen before is resolved without creating a new {@link BlockState}.
+ */
+class BlockStateCache {
+
+    /**
+     * The maximum amount of distinct palette-entries that are cached, to not grow unbounded on broken worlds
+     */
+    private static final int MAX_SIZE = 1 << 16;
+
+    private static final String AIR_ID = "minecraft:air";
+    private static final String[] NO_PROPERTIES = new String[0];
+
+    private static final Map<RawEntry, BlockState> CACHE = new ConcurrentHashMap<>();
+
+    private BlockStateCache() {}
+
+    public static BlockState read(CompoundTag paletteEntry) {
+        String id = paletteEntry.getString("Name");
+        if (AIR_ID.equals(id)) return BlockState.AIR; //shortcut to save time and memory
+
+        String[] properties = NO_PROPERTIES;
+        CompoundTag propertiesTag = paletteEntry.getCompoundTag("Properties");
+        if (propertiesTag != null && propertiesTag.size() > 0) {
+            properties = new String[propertiesTag.size() * 2];
+            int i = 0;
+            for (Map.Entry<String, Tag<?>> property : propertiesTag) {
+                properties[i++] = property.getKey();
+                properties[i++] = ((StringTag) property.getValue()).getValue();
+            }
+        }
+
+        RawEntry key = new RawEntry(id, properties);
+        BlockState blockState = CACHE.get(key);
+        if (blockState != null) return blockState;
+
+        blockState = decode(id, properties);
+        if (CACHE.size() < MAX_SIZE) CACHE.putIfAbsent(key, blockState);
+        return blockState;
+    }
+
+    private static BlockState decode(String id, String[] properties) {
+        Map<String, String> propertyMap = new LinkedHashMap<>();
+        for (int i = 0; i < properties.length; i += 2) {
+            propertyMap.put(properties[i].toLowerCase(), properties[i + 1].toLowerCase());
+        }
+
+        return new BlockState(id, propertyMap).intern();
+    }
+
+    private static final class RawEntry {
+
+        private final String id;
+        private final String[] properties;
+        private final int hash;
+
+        private RawEntry(String id, String[] properties) {
+            this.id = id;
+            this.properties = properties;
+            this.hash = id.hashCode() * 31 + Arrays.hashCode(properties);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RawEntry)) return false;
+            RawEntry that = (RawEntry) o;
+            return hash == that.hash && id.equals(that.id) && Arrays.equals(properties, that.properties);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
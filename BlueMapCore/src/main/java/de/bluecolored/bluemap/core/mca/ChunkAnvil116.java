@@ -25,20 +25,16 @@
 package de.bluecolored.bluemap.core.mca;
 
 import de.bluecolored.bluemap.core.logger.Logger;
-import de.bluecolored.bluemap.core.world.Biome;
+import de.bluecolored.bluemap.core.world.BiomeIds;
 import de.bluecolored.bluemap.core.world.BlockState;
 import de.bluecolored.bluemap.core.world.LightData;
 import net.querz.nbt.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 
 @SuppressWarnings("FieldMayBeFinal")
 public class ChunkAnvil116 extends MCAChunk {
-    private static final long[] EMPTY_LONG_ARRAY = new long[0];
 
     private boolean isGenerated;
     private boolean hasLight;
@@ -50,8 +46,8 @@ public class ChunkAnvil116 extends MCAChunk {
 
     private int[] biomes;
 
-    private long[] oceanFloorHeights = EMPTY_LONG_ARRAY;
-    private long[] worldSurfaceHeights = EMPTY_LONG_ARRAY;
+    private Heightmap oceanFloorHeights = Heightmap.EMPTY;
+    private Heightmap worldSurfaceHeights = Heightmap.EMPTY;
 
     @SuppressWarnings("unchecked")
     public ChunkAnvil116(MCAWorld world, CompoundTag chunkTag) {
@@ -71,8 +67,8 @@ public ChunkAnvil116(MCAWorld world, CompoundTag chunkTag) {
 
         if (levelData.containsKey("Heightmaps")) {
             CompoundTag heightmapsTag = levelData.getCompoundTag("Heightmaps");
-            this.worldSurfaceHeights = heightmapsTag.getLongArray("WORLD_SURFACE");
-            this.oceanFloorHeights = heightmapsTag.getLongArray("OCEAN_FLOOR");
+            this.worldSurfaceHeights = Heightmap.fromLongArray(heightmapsTag.getLongArray("WORLD_SURFACE"), 0);
+            this.oceanFloorHeights = Heightmap.fromLongArray(heightmapsTag.getLongArray("OCEAN_FLOOR"), 0);
         }
 
         if (levelData.containsKey("Sections")) {
@@ -140,6 +136,14 @@ public BlockState getBlockState(int x, int y, int z) {
         return section.getBlockState(x, y, z);
     }
 
+    @Override
+    public BlockState getUniformSectionState(int sectionY) {
+        Section section = getSection(sectionY);
+        if (section == null) return BlockState.AIR;
+
+        return section.getUniformBlockState();
+    }
+
     @Override
     public LightData getLightData(int x, int y, int z, LightData target) {
         if (!hasLight) return target.set(getWorld().getSkyLight(), 0);
@@ -153,8 +157,8 @@ public LightData getLightData(int x, int y, int z, LightData target) {
     }
 
     @Override
-    public String getBiome(int x, int y, int z) {
-        if (biomes.length < 16) return Biome.DEFAULT.getFormatted();
+    public int getBiomeId(int x, int y, int z) {
+        if (biomes.length < 16) return BiomeIds.DEFAULT;
 
         x = (x & 0xF) / 4; // Math.floorMod(pos.getX(), 16)
         z = (z & 0xF) / 4;
@@ -165,7 +169,7 @@ public String getBiome(int x, int y, int z) {
         if (biomeIntIndex >= biomes.length) biomeIntIndex -= (((biomeIntIndex - biomes.length) >> 4) + 1) * 16;
         if (biomeIntIndex < 0) biomeIntIndex -= (biomeIntIndex >> 4) * 16;
 
-        return LegacyBiomes.idFor(biomes[biomeIntIndex]);
+        return LegacyBiomes.biomeIdFor(biomes[biomeIntIndex]);
     }
 
     @Override
@@ -180,18 +184,12 @@ public int getMaxY(int x, int z) {
 
     @Override
     public int getWorldSurfaceY(int x, int z) {
-        if (this.worldSurfaceHeights.length < 37) return 0;
-
-        x &= 0xF; z &= 0xF;
-        return (int) MCAMath.getValueFromLongArray(this.worldSurfaceHeights, z * 16 + x, 9);
+        return worldSurfaceHeights.get(x, z);
     }
 
     @Override
     public int getOceanFloorY(int x, int z) {
-        if (this.oceanFloorHeights.length < 37) return 0;
-
-        x &= 0xF; z &= 0xF;
-        return (int) MCAMath.getValueFromLongArray(this.oceanFloorHeights, z * 16 + x, 9);
+        return oceanFloorHeights.get(x, z);
     }
 
     private Section getSection(int y) {
@@ -200,93 +198,89 @@ private Section getSection(int y) {
         return this.sections[y];
     }
 
-    private static class Section {
-        private static final String AIR_ID = "minecraft:air";
+    @Override
+    public int estimateMemorySize() {
+        int size = 64 + biomes.length * 4 + oceanFloorHeights.estimateMemorySize() + worldSurfaceHeights.estimateMemorySize();
+        for (Section section : sections) {
+            if (section != null) size += 16 + section.estimateMemorySize();
+        }
+        return size;
+    }
 
+    private static class Section {
         private int sectionY;
-        private byte[] blockLight;
-        private byte[] skyLight;
-        private long[] blocks;
+        private NibbleArray blockLight;
+        private NibbleArray skyLight;
+        private PaletteIndices blocks;
         private BlockState[] palette;
 
-        private int bitsPerBlock;
-
         @SuppressWarnings("unchecked")
         public Section(CompoundTag sectionData) {
             this.sectionY = sectionData.get("Y", NumberTag.class).asInt();
-            this.blockLight = sectionData.getByteArray("BlockLight");
-            this.skyLight = sectionData.getByteArray("SkyLight");
-            this.blocks = sectionData.getLongArray("BlockStates");
-
-            if (blocks.length < 256 && blocks.length > 0) blocks = Arrays.copyOf(blocks, 256);
-            if (blockLight.length < 2048 && blockLight.length > 0) blockLight = Arrays.copyOf(blockLight, 2048);
-            if (skyLight.length < 2048 && skyLight.length > 0) skyLight = Arrays.copyOf(skyLight, 2048);
+            this.blockLight = NibbleArray.of(sectionData.getByteArray("BlockLight"));
+            this.skyLight = NibbleArray.of(sectionData.getByteArray("SkyLight"));
+            long[] packedBlocks = sectionData.getLongArray("BlockStates");
 
             //read block palette
             ListTag<CompoundTag> paletteTag = (ListTag<CompoundTag>) sectionData.getListTag("Palette");
             if (paletteTag != null) {
                 this.palette = new BlockState[paletteTag.size()];
                 for (int i = 0; i < this.palette.length; i++) {
-                    CompoundTag stateTag = paletteTag.get(i);
-
-                    String id = stateTag.getString("Name"); //shortcut to save time and memory
-                    if (id.equals(AIR_ID)) {
-                        palette[i] = BlockState.AIR;
-                        continue;
-                    }
-
-                    Map<String, String> properties = new HashMap<>();
-
-                    if (stateTag.containsKey("Properties")) {
-                        CompoundTag propertiesTag = stateTag.getCompoundTag("Properties");
-                        for (Entry<String, Tag<?>> property : propertiesTag) {
-                            properties.put(property.getKey().toLowerCase(), ((StringTag) property.getValue()).getValue().toLowerCase());
-                        }
-                    }
-
-                    palette[i] = new BlockState(id, properties);
+                    palette[i] = BlockStateCache.read(paletteTag.get(i));
                 }
             } else {
                 this.palette = new BlockState[0];
             }
 
-            this.bitsPerBlock = this.blocks.length >> 6; // available longs * 64 (bits per long) / 4096 (blocks per section) (floored result)
+            // single-value palettes don't need any data
+            if (palette.length > 1 && packedBlocks.length > 0) {
+                if (packedBlocks.length < 256) packedBlocks = Arrays.copyOf(packedBlocks, 256);
+                int bitsPerBlock = packedBlocks.length >> 6; // available longs * 64 (bits per long) / 4096 (blocks per section) (floored result)
+                this.blocks = new PaletteIndices(packedBlocks, bitsPerBlock, 4096, false);
+            }
         }
 
         public int getSectionY() {
             return sectionY;
         }
 
+        public BlockState getUniformBlockState() {
+            if (palette.length == 1) return palette[0];
+            if (blocks == null) return BlockState.AIR;
+            return null;
+        }
+
         public BlockState getBlockState(int x, int y, int z) {
             if (palette.length == 1) return palette[0];
-            if (blocks.length == 0) return BlockState.AIR;
+            if (blocks == null) return BlockState.AIR;
 
             x &= 0xF; y &= 0xF; z &= 0xF; // Math.floorMod(pos.getX(), 16)
 
             int blockIndex = y * 256 + z * 16 + x;
 
-            long value = MCAMath.getValueFromLongArray(blocks, blockIndex, bitsPerBlock);
+            int value = blocks.get(blockIndex);
             if (value >= palette.length) {
                 Logger.global.noFloodWarning("palettewarning", "Got palette value " + value + " but palette has size of " + palette.length + "! (Future occasions of this error will not be logged)");
                 return BlockState.MISSING;
             }
 
-            return palette[(int) value];
+            return palette[value];
         }
 
         public LightData getLightData(int x, int y, int z, LightData target) {
-            if (blockLight.length == 0 && skyLight.length == 0) return target.set(0, 0);
+            if (blockLight.isUniform() && skyLight.isUniform()) return target.set(skyLight.get(0), blockLight.get(0));
 
             x &= 0xF; y &= 0xF; z &= 0xF; // Math.floorMod(pos.getX(), 16)
 
-            int blockByteIndex = y * 256 + z * 16 + x;
-            int blockHalfByteIndex = blockByteIndex >> 1; // blockByteIndex / 2
-            boolean largeHalf = (blockByteIndex & 0x1) != 0; // (blockByteIndex % 2) == 0
+            int blockIndex = y * 256 + z * 16 + x;
+            return target.set(skyLight.get(blockIndex), blockLight.get(blockIndex));
+        }
 
-            return target.set(
-                    this.skyLight.length > 0 ? MCAMath.getByteHalf(this.skyLight[blockHalfByteIndex], largeHalf) : 0,
-                    this.blockLight.length > 0 ? MCAMath.getByteHalf(this.blockLight[blockHalfByteIndex], largeHalf) : 0
-            );
+        public int estimateMemorySize() {
+            return 64 +
+                    blockLight.estimateMemorySize() + skyLight.estimateMemorySize() +
+                    (blocks != null ? blocks.estimateMemorySize() : 0) +
+                    palette.length * 64; // rough estimate for each block-state
         }
     }
 
@@ -26,25 +26,21 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import de.bluecolored.bluemap.core.logger.Logger;
-import de.bluecolored.bluemap.core.world.Biome;
+import de.bluecolored.bluemap.core.world.BiomeIds;
 import de.bluecolored.bluemap.core.world.BlockState;
 import de.bluecolored.bluemap.core.world.LightData;
 import net.querz.nbt.CompoundTag;
 import net.querz.nbt.ListTag;
 import net.querz.nbt.NumberTag;
 import net.querz.nbt.StringTag;
-import net.querz.nbt.Tag;
 
 @SuppressWarnings("FieldMayBeFinal")
 public class ChunkAnvil118 extends MCAChunk {
     private static final long[] EMPTY_LONG_ARRAY = new long[0];
     private static final BlockState[] EMPTY_BLOCK_STATE_ARRAY = new BlockState[0];
-    private static final String[] EMPTY_STRING_ARRAY = new String[0];
+    private static final int[] EMPTY_INT_ARRAY = new int[0];
 
     private boolean isGenerated;
     private boolean hasLight;
@@ -54,8 +50,8 @@ public class ChunkAnvil118 extends MCAChunk {
     private int sectionMin, sectionMax;
     private Section[] sections;
 
-    private long[] oceanFloorHeights = EMPTY_LONG_ARRAY;
-    private long[] worldSurfaceHeights = EMPTY_LONG_ARRAY;
+    private Heightmap oceanFloorHeights = Heightmap.EMPTY;
+    private Heightmap worldSurfaceHeights = Heightmap.EMPTY;
 
     @SuppressWarnings("unchecked")
     public ChunkAnvil118(MCAWorld world, CompoundTag chunkTag) {
@@ -73,8 +69,8 @@ public ChunkAnvil118(MCAWorld world, CompoundTag chunkTag) {
 
         if (chunkTag.containsKey("Heightmaps")) {
             CompoundTag heightmapsTag = chunkTag.getCompoundTag("Heightmaps");
-            this.worldSurfaceHeights = heightmapsTag.getLongArray("WORLD_SURFACE");
-            this.oceanFloorHeights = heightmapsTag.getLongArray("OCEAN_FLOOR");
+            this.worldSurfaceHeights = Heightmap.fromLongArray(heightmapsTag.getLongArray("WORLD_SURFACE"), -64);
+            this.oceanFloorHeights = Heightmap.fromLongArray(heightmapsTag.getLongArray("OCEAN_FLOOR"), -64);
         }
 
         if (chunkTag.containsKey("sections")) {
@@ -124,6 +120,14 @@ public BlockState getBlockState(int x, int y, int z) {
         return section.getBlockState(x, y, z);
     }
 
+    @Override
+    public BlockState getUniformSectionState(int sectionY) {
+        Section section = getSection(sectionY);
+        if (section == null) return BlockState.AIR;
+
+        return section.getUniformBlockState();
+    }
+
     @Override
     public LightData getLightData(int x, int y, int z, LightData target) {
         if (!hasLight) return target.set(getWorld().getSkyLight(), 0);
@@ -137,13 +141,13 @@ public LightData getLightData(int x, int y, int z, LightData target) {
     }
 
     @Override
-    public String getBiome(int x, int y, int z) {
+    public int getBiomeId(int x, int y, int z) {
         int sectionY = y >> 4;
 
         Section section = getSection(sectionY);
-        if (section == null) return Biome.DEFAULT.getFormatted();
+        if (section == null) return BiomeIds.DEFAULT;
 
-        return section.getBiome(x, y, z);
+        return section.getBiomeId(x, y, z);
     }
 
     @Override
@@ -158,18 +162,12 @@ public int getMaxY(int x, int z) {
 
     @Override
     public int getWorldSurfaceY(int x, int z) {
-        if (this.worldSurfaceHeights.length < 37) return 0;
-
-        x &= 0xF; z &= 0xF;
-        return (int) MCAMath.getValueFromLongArray(this.worldSurfaceHeights, z * 16 + x, 9) - 64;
+        return worldSurfaceHeights.get(x, z);
     }
 
     @Override
     public int getOceanFloorY(int x, int z) {
-        if (this.oceanFloorHeights.length < 37) return 0;
-
-        x &= 0xF; z &= 0xF;
-        return (int) MCAMath.getValueFromLongArray(this.oceanFloorHeights, z * 16 + x, 9) - 64;
+        return oceanFloorHeights.get(x, z);
     }
 
     private Section getSection(int y) {
@@ -178,35 +176,45 @@ private Section getSection(int y) {
         return this.sections[y];
     }
 
+    @Override
+    public int estimateMemorySize() {
+        int size = 64 + oceanFloorHeights.estimateMemorySize() + worldSurfaceHeights.estimateMemorySize();
+        for (Section section : sections) {
+            if (section != null) size += 16 + section.estimateMemorySize();
+        }
+        return size;
+    }
+
     private static class Section {
         private int sectionY;
-        private byte[] blockLight;
-        private byte[] skyLight;
-        private long[] blocks = EMPTY_LONG_ARRAY;
+        private NibbleArray blockLight;
+        private NibbleArray skyLight;
+        private PaletteIndices blocks;
         private long[] biomes = EMPTY_LONG_ARRAY;
         private BlockState[] blockPalette = EMPTY_BLOCK_STATE_ARRAY;
-        private String[] biomePalette = EMPTY_STRING_ARRAY;
+        private int[] biomePalette = EMPTY_INT_ARRAY;
 
-        private int bitsPerBlock, bitsPerBiome;
+        private int bitsPerBiome;
 
         @SuppressWarnings("unchecked")
         public Section(CompoundTag sectionData) {
             this.sectionY = sectionData.get("Y", NumberTag.class).asInt();
-            this.blockLight = sectionData.getByteArray("BlockLight");
-            this.skyLight = sectionData.getByteArray("SkyLight");
+            this.blockLight = NibbleArray.of(sectionData.getByteArray("BlockLight"));
+            this.skyLight = NibbleArray.of(sectionData.getByteArray("SkyLight"));
 
             // blocks
+            long[] packedBlocks = EMPTY_LONG_ARRAY;
             CompoundTag blockStatesTag = sectionData.getCompoundTag("block_states");
             if (blockStatesTag != null) {
                 // block data
-                this.blocks = blockStatesTag.getLongArray("data");
+                packedBlocks = blockStatesTag.getLongArray("data");
 
                 // block palette
                 ListTag<CompoundTag> paletteTag = (ListTag<CompoundTag>) blockStatesTag.getListTag("palette");
                 if (paletteTag != null) {
                     this.blockPalette = new BlockState[paletteTag.size()];
                     for (int i = 0; i < this.blockPalette.length; i++) {
-                        blockPalette[i] = readBlockStatePaletteEntry(paletteTag.get(i));
+                        blockPalette[i] = BlockStateCache.read(paletteTag.get(i));
                     }
                 }
             }
@@ -220,74 +228,62 @@ public Section(CompoundTag sectionData) {
                 // biomes palette
                 ListTag<StringTag> paletteTag = (ListTag<StringTag>) biomesTag.getListTag("palette");
                 if (paletteTag != null) {
-                    this.biomePalette = new String[paletteTag.size()];
+                    this.biomePalette = new int[paletteTag.size()];
                     for (int i = 0; i < this.biomePalette.length; i++) {
-                        biomePalette[i] = paletteTag.get(i).getValue();
+                        biomePalette[i] = BiomeIds.idFor(paletteTag.get(i).getValue());
                     }
                 }
             }
 
-            if (blocks.length < 256 && blocks.length > 0) blocks = Arrays.copyOf(blocks, 256);
-            if (blockLight.length < 2048 && blockLight.length > 0) blockLight = Arrays.copyOf(blockLight, 2048);
-            if (skyLight.length < 2048 && skyLight.length > 0) skyLight = Arrays.copyOf(skyLight, 2048);
-
-            this.bitsPerBlock = this.blocks.length >> 6; // available longs * 64 (bits per long) / 4096 (blocks per section) (floored result)
-            this.bitsPerBiome = Integer.SIZE - Integer.numberOfLeadingZeros(this.biomePalette.length - 1);
-        }
-
-        private BlockState readBlockStatePaletteEntry(CompoundTag paletteEntry) {
-            String id = paletteEntry.getString("Name");
-            if (BlockState.AIR.getFormatted().equals(id)) return BlockState.AIR; //shortcut to save time and memory
-
-            Map<String, String> properties = new LinkedHashMap<>();
-            if (paletteEntry.containsKey("Properties")) {
-                CompoundTag propertiesTag = paletteEntry.getCompoundTag("Properties");
-                for (Entry<String, Tag<?>> property : propertiesTag) {
-                    properties.put(property.getKey().toLowerCase(), ((StringTag) property.getValue()).getValue().toLowerCase());
-                }
+            // single-value palettes don't need any data
+            if (biomePalette.length == 1) biomes = EMPTY_LONG_ARRAY;
+            if (blockPalette.length > 1 && packedBlocks.length > 0) {
+                if (packedBlocks.length < 256) packedBlocks = Arrays.copyOf(packedBlocks, 256);
+                int bitsPerBlock = packedBlocks.length >> 6; // available longs * 64 (bits per long) / 4096 (blocks per section) (floored result)
+                this.blocks = new PaletteIndices(packedBlocks, bitsPerBlock, 4096, false);
             }
 
-            return new BlockState(id, properties);
+            this.bitsPerBiome = Integer.SIZE - Integer.numberOfLeadingZeros(this.biomePalette.length - 1);
         }
 
         public int getSectionY() {
             return sectionY;
         }
 
+        public BlockState getUniformBlockState() {
+            if (blockPalette.length == 1) return blockPalette[0];
+            if (blocks == null) return BlockState.AIR;
+            return null;
+        }
+
         public BlockState getBlockState(int x, int y, int z) {
             if (blockPalette.length == 1) return blockPalette[0];
-            if (blocks.length == 0) return BlockState.AIR;
+            if (blocks == null) return BlockState.AIR;
 
             x &= 0xF; y &= 0xF; z &= 0xF; // Math.floorMod(pos.getX(), 16)
 
             int blockIndex = y * 256 + z * 16 + x;
 
-            long value = MCAMath.getValueFromLongArray(blocks, blockIndex, bitsPerBlock);
+            int value = blocks.get(blockIndex);
             if (value >= blockPalette.length) {
                 Logger.global.noFloodWarning("palettewarning", "Got block-palette value " + value + " but palette has size of " + blockPalette.length + "! (Future occasions of this error will not be logged)");
                 return BlockState.MISSING;
             }
 
-            return blockPalette[(int) value];
+            return blockPalette[value];
         }
 
         public LightData getLightData(int x, int y, int z, LightData target) {
-            if (blockLight.length == 0 && skyLight.length == 0) return target.set(0, 0);
+            if (blockLight.isUniform() && skyLight.isUniform()) return target.set(skyLight.get(0), blockLight.get(0));
 
             x &= 0xF; y &= 0xF; z &= 0xF; // Math.floorMod(pos.getX(), 16)
 
-            int blockByteIndex = y * 256 + z * 16 + x;
-            int blockHalfByteIndex = blockByteIndex >> 1; // blockByteIndex / 2
-            boolean largeHalf = (blockByteIndex & 0x1) != 0; // (blockByteIndex % 2) == 0
-
-            return target.set(
-                    this.skyLight.length > 0 ? MCAMath.getByteHalf(this.skyLight[blockHalfByteIndex], largeHalf) : 0,
-                    this.blockLight.length > 0 ? MCAMath.getByteHalf(this.blockLight[blockHalfByteIndex], largeHalf) : 0
-            );
+            int blockIndex = y * 256 + z * 16 + x;
+            return target.set(skyLight.get(blockIndex), blockLight.get(blockIndex));
         }
 
-        public String getBiome(int x, int y, int z) {
-            if (biomePalette.length == 0) return Biome.DEFAULT.getValue();
+        public int getBiomeId(int x, int y, int z) {
+            if (biomePalette.length == 0) return BiomeIds.DEFAULT;
             if (biomePalette.length == 1 || biomes.length == 0) return biomePalette[0];
 
             x = (x & 0xF) / 4; // Math.floorMod(pos.getX(), 16) / 4
@@ -298,11 +294,20 @@ public String getBiome(int x, int y, int z) {
             long value = MCAMath.getValueFromLongArray(biomes, biomeIndex, bitsPerBiome);
             if (value >= biomePalette.length) {
                 Logger.global.noFloodWarning("biomepalettewarning", "Got biome-palette value " + value + " but palette has size of " + biomePalette.length + "! (Future occasions of this error will not be logged)");
-                return Biome.DEFAULT.getValue();
+                return BiomeIds.DEFAULT;
             }
 
             return biomePalette[(int) value];
         }
+
+        public int estimateMemorySize() {
+            return 64 +
+                    blockLight.estimateMemorySize() + skyLight.estimateMemorySize() +
+                    (blocks != null ? blocks.estimateMemorySize() : 0) +
+                    biomes.length * 8 +
+                    blockPalette.length * 64 + // rough estimate for each block-state
+                    biomePalette.length * 4;
+        }
     }
 
 }
@@ -0,0 +1,104 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+/**
+ * A heightmap of a chunk (one 9-bit value for each block-column), that is kept in its packed form
+ * as stored in the chunk-data and only unpacked when it is accessed for the first time.<br>
+ * <i>This is worth it because most heightmaps are never accessed at all while rendering.</i>
+ */
+public class Heightmap {
+
+    private static final int VALUE_COUNT = 256;
+    private static final int BITS_PER_VALUE = 9;
+
+    public static final Heightmap EMPTY = new Heightmap(null, false, 0);
+
+    private final boolean stream;
+    private final int offset;
+
+    private long[] packed;
+    private volatile short[] heights;
+
+    private Heightmap(long[] packed, boolean stream, int offset) {
+        this.packed = packed;
+        this.stream = stream;
+        this.offset = offset;
+
+        if (packed == null) this.heights = new short[VALUE_COUNT];
+    }
+
+    /**
+     * Returns the height-value at the specified block-column (the coordinates are taken modulo 16)
+     */
+    public int get(int x, int z) {
+        short[] heights = this.heights;
+        if (heights == null) heights = unpack();
+
+        return heights[(z & 0xF) * 16 + (x & 0xF)];
+    }
+
+    private synchronized short[] unpack() {
+        if (heights != null) return heights;
+
+        short[] heights = new short[VALUE_COUNT];
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            long value = stream ?
+                    MCAMath.getValueFromLongStream(packed, i, BITS_PER_VALUE) :
+                    MCAMath.getValueFromLongArray(packed, i, BITS_PER_VALUE);
+            heights[i] = (short) (value + offset);
+        }
+
+        this.heights = heights;
+        this.packed = null;
+        return heights;
+    }
+
+    /**
+     * Returns the estimated memory size of the unpacked heights, even if they are not unpacked yet
+     */
+    public int estimateMemorySize() {
+        return 32 + VALUE_COUNT * 2;
+    }
+
+    /**
+     * Creates a heightmap from the data of a 1.16+ chunk, where the values don't span over multiple longs.
+     * Returns {@link #EMPTY} if the data is incomplete.
+     */
+    public static Heightmap fromLongArray(long[] data, int offset) {
+        if (data.length < 37) return EMPTY;
+        return new Heightmap(data, false, offset);
+    }
+
+    /**
+     * Creates a heightmap from the data of a pre-1.16 chunk, where the values are stored as a continuous bit-stream.
+     * Returns {@link #EMPTY} if the data is incomplete.
+     */
+    public static Heightmap fromLongStream(long[] data) {
+        if (data.length < 36) return EMPTY;
+        return new Heightmap(data, true, 0);
+    }
+
+}
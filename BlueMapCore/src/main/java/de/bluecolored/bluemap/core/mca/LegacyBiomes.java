@@ -24,6 +24,8 @@
  */
 package de.bluecolored.bluemap.core.mca;
 
+import de.bluecolored.bluemap.core.world.BiomeIds;
+
 import java.util.Arrays;
 
 public class LegacyBiomes {
@@ -108,9 +110,24 @@ public class LegacyBiomes {
         BIOME_IDS[169] = "minecraft:bamboo_jungle_hills";
     }
 
+    private static final int[] BIOME_NUMERIC_IDS = new int[BIOME_IDS.length];
+    static {
+        for (int i = 0; i < BIOME_IDS.length; i++) {
+            BIOME_NUMERIC_IDS[i] = BiomeIds.idFor(BIOME_IDS[i]);
+        }
+    }
+
     public static String idFor(int legacyId) {
         if (legacyId < 0 || legacyId >= BIOME_IDS.length) legacyId = 0;
         return BIOME_IDS[legacyId];
     }
 
+    /**
+     * Returns the {@link BiomeIds id} of the biome with the given legacy (numeric) id
+     */
+    public static int biomeIdFor(int legacyId) {
+        if (legacyId < 0 || legacyId >= BIOME_NUMERIC_IDS.length) legacyId = 0;
+        return BIOME_NUMERIC_IDS[legacyId];
+    }
+
 }
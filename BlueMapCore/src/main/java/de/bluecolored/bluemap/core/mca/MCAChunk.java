@@ -28,11 +28,54 @@
 import de.bluecolored.bluemap.core.world.Chunk;
 import de.bluecolored.bluemap.core.world.LightData;
 import net.querz.nbt.CompoundTag;
+import net.querz.nbt.Tag;
 
+import java.io.DataInput;
 import java.io.IOException;
 
 public abstract class MCAChunk implements Chunk {
 
+    /**
+     * Filter for the parts of the chunk-data that are actually used by the {@link MCAChunk} implementations,
+     * everything else (entities, block-entities, structures, ticks, ...) can be skipped when reading the chunk.
+     */
+    public static final SelectiveNBTReader.Filter CHUNK_DATA_FILTER;
+    static {
+        SelectiveNBTReader.Filter heightmapsFilter = SelectiveNBTReader.Filter.empty()
+                .with("WORLD_SURFACE")
+                .with("OCEAN_FLOOR");
+
+        // 1.13 - 1.17
+        SelectiveNBTReader.Filter legacySectionFilter = SelectiveNBTReader.Filter.empty()
+                .with("Y")
+                .with("BlockLight")
+                .with("SkyLight")
+                .with("BlockStates")
+                .with("Palette");
+        SelectiveNBTReader.Filter levelFilter = SelectiveNBTReader.Filter.empty()
+                .with("Status")
+                .with("InhabitedTime")
+                .with("Heightmaps", heightmapsFilter)
+                .with("Sections", legacySectionFilter)
+                .with("Biomes");
+
+        // 1.18+
+        SelectiveNBTReader.Filter sectionFilter = SelectiveNBTReader.Filter.empty()
+                .with("Y")
+                .with("BlockLight")
+                .with("SkyLight")
+                .with("block_states")
+                .with("biomes");
+
+        CHUNK_DATA_FILTER = SelectiveNBTReader.Filter.empty()
+                .with("DataVersion")
+                .with("Level", levelFilter)
+                .with("Status")
+                .with("InhabitedTime")
+                .with("Heightmaps", heightmapsFilter)
+                .with("sections", sectionFilter);
+    }
+
     private final MCAWorld world;
     private final int dataVersion;
 
@@ -68,7 +111,7 @@ public int getDataVersion() {
     public abstract LightData getLightData(int x, int y, int z, LightData target);
 
     @Override
-    public abstract String getBiome(int x, int y, int z);
+    public abstract int getBiomeId(int x, int y, int z);
 
     @Override
     public int getMaxY(int x, int z) {
@@ -90,6 +133,18 @@ protected MCAWorld getWorld() {
         return world;
     }
 
+    /**
+     * Reads the chunk-data from the stream, skipping all data that is not needed by BlueMap,
+     * and creates the chunk from it.
+     */
+    public static MCAChunk read(MCAWorld world, DataInput in) throws IOException {
+        Tag<?> tag = new SelectiveNBTReader(in).read(CHUNK_DATA_FILTER);
+        if (!(tag instanceof CompoundTag))
+            throw new IOException("Invalid data tag: " + (tag == null ? "null" : tag.getClass().getName()));
+
+        return create(world, (CompoundTag) tag);
+    }
+
     public static MCAChunk create(MCAWorld world, CompoundTag chunkTag) throws IOException {
         int version = chunkTag.getInt("DataVersion");
 
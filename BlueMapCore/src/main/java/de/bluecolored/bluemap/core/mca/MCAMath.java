@@ -24,6 +24,8 @@
  */
 package de.bluecolored.bluemap.core.mca;
 
+import java.util.Arrays;
+
 public class MCAMath {
 
     /**
@@ -58,6 +60,98 @@ public static long getValueFromLongStream(long[] data, int valueIndex, int bitsP
         return value & (0xFFFFFFFFFFFFFFFFL >>> -bitsPerValue);
     }
 
+    /**
+     * Unpacks all values of a long array where each long contains as many values as fit in it without overflowing
+     * (see {@link #getValueFromLongArray(long[], int, int)}) into the target array.<br>
+     * Values that are missing in the data are set to 0.
+     */
+    public static void unpackLongArray(long[] data, int bitsPerValue, byte[] target) {
+        int valuesPerLong = 64 / bitsPerValue;
+        long mask = 0xFFFFFFFFFFFFFFFFL >>> -bitsPerValue;
+
+        int i = 0;
+        for (int l = 0; l < data.length && i < target.length; l++) {
+            long value = data[l];
+            int end = Math.min(i + valuesPerLong, target.length);
+            for (; i < end; i++) {
+                target[i] = (byte) (value & mask);
+                value >>>= bitsPerValue;
+            }
+        }
+        if (i < target.length) Arrays.fill(target, i, target.length, (byte) 0);
+    }
+
+    /**
+     * Unpacks all values of a long array where each long contains as many values as fit in it without overflowing
+     * (see {@link #getValueFromLongArray(long[], int, int)}) into the target array.<br>
+     * Values that are missing in the data are set to 0.
+     */
+    public static void unpackLongArray(long[] data, int bitsPerValue, short[] target) {
+        int valuesPerLong = 64 / bitsPerValue;
+        long mask = 0xFFFFFFFFFFFFFFFFL >>> -bitsPerValue;
+
+        int i = 0;
+        for (int l = 0; l < data.length && i < target.length; l++) {
+            long value = data[l];
+            int end = Math.min(i + valuesPerLong, target.length);
+            for (; i < end; i++) {
+                target[i] = (short) (value & mask);
+                value >>>= bitsPerValue;
+            }
+        }
+        if (i < target.length) Arrays.fill(target, i, target.length, (short) 0);
+    }
+
+    /**
+     * Unpacks all values of a long array that is treated as a continuous stream of bits
+     * (see {@link #getValueFromLongStream(long[], int, int)}) into the target array.<br>
+     * Values that are missing in the data are set to 0.
+     */
+    public static void unpackLongStream(long[] data, int bitsPerValue, byte[] target) {
+        long mask = 0xFFFFFFFFFFFFFFFFL >>> -bitsPerValue;
+
+        int longIndex = 0;
+        long current = data.length > 0 ? data[0] : 0;
+        int available = 64;
+        for (int i = 0; i < target.length; i++) {
+            if (available >= bitsPerValue) {
+                target[i] = (byte) (current & mask);
+                current >>>= bitsPerValue;
+                available -= bitsPerValue;
+            } else {
+                long next = ++longIndex < data.length ? data[longIndex] : 0;
+                target[i] = (byte) ((current | next << available) & mask);
+                current = next >>> (bitsPerValue - available);
+                available += 64 - bitsPerValue;
+            }
+        }
+    }
+
+    /**
+     * Unpacks all values of a long array that is treated as a continuous stream of bits
+     * (see {@link #getValueFromLongStream(long[], int, int)}) into the target array.<br>
+     * Values that are missing in the data are set to 0.
+     */
+    public static void unpackLongStream(long[] data, int bitsPerValue, short[] target) {
+        long mask = 0xFFFFFFFFFFFFFFFFL >>> -bitsPerValue;
+
+        int longIndex = 0;
+        long current = data.length > 0 ? data[0] : 0;
+        int available = 64;
+        for (int i = 0; i < target.length; i++) {
+            if (available >= bitsPerValue) {
+                target[i] = (short) (current & mask);
+                current >>>= bitsPerValue;
+                available -= bitsPerValue;
+            } else {
+                long next = ++longIndex < data.length ? data[longIndex] : 0;
+                target[i] = (short) ((current | next << available) & mask);
+                current = next >>> (bitsPerValue - available);
+                available += 64 - bitsPerValue;
+            }
+        }
+    }
+
     /**
      * Extracts the 4 bits of the left (largeHalf = <code>true</code>) or the right (largeHalf = <code>false</code>) side of the byte stored in <code>value</code>.<br>
      * The value is treated as an unsigned byte.
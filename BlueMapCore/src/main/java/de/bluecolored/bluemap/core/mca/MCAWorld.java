@@ -28,9 +28,11 @@
 import com.flowpowered.math.vector.Vector3i;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.mca.region.LinearRegion;
 import de.bluecolored.bluemap.core.mca.region.RegionType;
 import de.bluecolored.bluemap.core.util.Vector2iCache;
 import de.bluecolored.bluemap.core.world.*;
@@ -65,9 +67,23 @@ public class MCAWorld implements World {
     private final boolean ignoreMissingLightData;
 
     private final LoadingCache<Vector2i, Region> regionCache;
-    private final LoadingCache<Vector2i, Chunk> chunkCache;
+    private final ChunkCache chunkCache;
+    private final ChunkSnapshotStore chunkSnapshotStore;
+    private final LinearRegion.DecodedRegionCache linearRegionCache;
 
     public MCAWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData) throws IOException {
+        this(worldFolder, skyLight, ignoreMissingLightData, ChunkCache.DEFAULT_MAX_MEMORY);
+    }
+
+    public MCAWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData, long chunkCacheMemory) throws IOException {
+        this(worldFolder, skyLight, ignoreMissingLightData, chunkCacheMemory, null);
+    }
+
+    /**
+     * @param chunkSnapshotFolder The folder to store decoded chunk-snapshots in (see {@link ChunkSnapshotStore}),
+     *                            or <code>null</code> to not use chunk-snapshots
+     */
+    public MCAWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData, long chunkCacheMemory, Path chunkSnapshotFolder) throws IOException {
         this.worldFolder = worldFolder.toRealPath();
         this.skyLight = skyLight;
         this.ignoreMissingLightData = ignoreMissingLightData;
@@ -76,13 +92,12 @@ public MCAWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData)
                 .executor(BlueMap.THREAD_POOL)
                 .maximumSize(100)
                 .expireAfterWrite(1, TimeUnit.MINUTES)
+                .removalListener(this::onRegionRemoved)
                 .build(this::loadRegion);
 
-        this.chunkCache = Caffeine.newBuilder()
-                .executor(BlueMap.THREAD_POOL)
-                .maximumSize(500)
-                .expireAfterWrite(1, TimeUnit.MINUTES)
-                .build(this::loadChunk);
+        this.chunkCache = new ChunkCache(chunkCacheMemory, this::loadChunk, this::getChunkVersion);
+        this.chunkSnapshotStore = chunkSnapshotFolder != null ? new ChunkSnapshotStore(chunkSnapshotFolder, SnapshotChunk.CODEC) : null;
+        this.linearRegionCache = new LinearRegion.DecodedRegionCache(chunkCacheMemory);
 
         try {
             Path levelFile = resolveLevelFile(worldFolder);
@@ -108,11 +123,7 @@ public Chunk getChunkAtBlock(int x, int y, int z) {
 
     @Override
     public Chunk getChunk(int x, int z) {
-        return getChunk(VECTOR_2_I_CACHE.get(x, z));
-    }
-
-    private Chunk getChunk(Vector2i pos) {
-        return chunkCache.get(pos);
+        return chunkCache.get(x, z);
     }
 
     @Override
@@ -187,6 +198,22 @@ public Vector3i getSpawnPoint() {
         return spawnPoint;
     }
 
+    @Override
+    public void preloadRegionChunks(int regionX, int regionZ, Collection<Vector2i> chunks) {
+        List<Vector2i> regionChunks = new ArrayList<>();
+        for (Vector2i chunk : chunks) {
+            if (chunk.getX() >> 5 == regionX && chunk.getY() >> 5 == regionZ) regionChunks.add(chunk);
+        }
+
+        if (regionChunks.isEmpty()) return;
+
+        try {
+            chunkCache.preload(getRegion(regionX, regionZ), regionChunks, ignoreMissingLightData);
+        } catch (IOException | RuntimeException ex) {
+            Logger.global.logDebug("Failed to preload chunks of region (x:" + regionX + ", z:" + regionZ + "): " + ex);
+        }
+    }
+
     @Override
     public void invalidateChunkCache() {
         chunkCache.invalidateAll();
@@ -194,7 +221,7 @@ public void invalidateChunkCache() {
 
     @Override
     public void invalidateChunkCache(int x, int z) {
-        chunkCache.invalidate(VECTOR_2_I_CACHE.get(x, z));
+        chunkCache.invalidate(x, z);
     }
 
     @Override
@@ -202,14 +229,43 @@ public void cleanUpChunkCache() {
         chunkCache.cleanUp();
     }
 
+    @Override
+    public ChunkLoadFailures getChunkLoadFailures() {
+        return chunkCache.getLoadFailures();
+    }
+
+    /**
+     * The cache of decompressed .linear region-files, which uses the same memory-limit as the chunk-cache of this world
+     */
+    public LinearRegion.DecodedRegionCache getLinearRegionCache() {
+        return linearRegionCache;
+    }
+
     public Path getWorldFolder() {
         return worldFolder;
     }
 
-    private Path getRegionFolder() {
+    @Override
+    public Path getRegionFolder() {
         return worldFolder.resolve("region");
     }
 
+    @Override
+    public Vector2i getRegionPosition(Path file) {
+        String fileName = file.getFileName().toString();
+        if (RegionType.forFileName(fileName) == null) return null;
+
+        try {
+            String[] filenameParts = fileName.split("\\.");
+            int rX = Integer.parseInt(filenameParts[1]);
+            int rZ = Integer.parseInt(filenameParts[2]);
+
+            return VECTOR_2_I_CACHE.get(rX, rZ);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ignore) {
+            return null;
+        }
+    }
+
     public boolean isIgnoreMissingLightData() {
         return ignoreMissingLightData;
     }
@@ -219,42 +275,25 @@ private Region loadRegion(Vector2i regionPos) {
     }
 
     Region loadRegion(int x, int z) {
-        return RegionType.loadRegion(this, getRegionFolder(), x, z);
+        Region region = RegionType.loadRegion(this, getRegionFolder(), x, z);
+        if (chunkSnapshotStore != null) region = chunkSnapshotStore.wrap(region);
+        return region;
     }
 
-    private Chunk loadChunk(Vector2i chunkPos) {
-        return loadChunk(chunkPos.getX(), chunkPos.getY());
-    }
+    private void onRegionRemoved(Vector2i regionPos, Region region, RemovalCause cause) {
+        if (region == null) return;
 
-    Chunk loadChunk(int x, int z) {
-        final int tries = 3;
-        final int tryInterval = 1000;
-
-        Exception loadException = null;
-        for (int i = 0; i < tries; i++) {
-            try {
-                return getRegion(x >> 5, z >> 5)
-                        .loadChunk(x, z, ignoreMissingLightData);
-            } catch (IOException | RuntimeException e) {
-                if (loadException != null) e.addSuppressed(loadException);
-                loadException = e;
-
-                if (i + 1 < tries) {
-                    try {
-                        Thread.sleep(tryInterval);
-                    } catch (InterruptedException ex) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-            }
+        try {
+            region.close();
+        } catch (IOException ex) {
+            Logger.global.logDebug("Failed to close region (x:" + regionPos.getX() + ", z:" + regionPos.getY() + "): " + ex);
         }
-
-        Logger.global.logDebug("Unexpected exception trying to load chunk (x:" + x + ", z:" + z + "):" + loadException);
-        return EmptyChunk.INSTANCE;
     }
 
-
+    Chunk loadChunk(int x, int z) throws IOException {
+        return getRegion(x >> 5, z >> 5)
+                .loadChunk(x, z, ignoreMissingLightData);
+    }
 
     @Override
     public String toString() {
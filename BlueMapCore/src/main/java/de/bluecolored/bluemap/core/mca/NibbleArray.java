@@ -0,0 +1,95 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import java.util.Arrays;
+
+/**
+ * An immutable array of the 4096 nibbles (4-bit values) of a chunk-section, like the block- or sky-light.<br>
+ * If all nibbles have the same value (which is the case for most light-data), only that value is stored.
+ */
+public class NibbleArray {
+
+    public static final int NIBBLE_COUNT = 4096;
+    public static final int BYTE_COUNT = NIBBLE_COUNT / 2;
+
+    private static final NibbleArray[] UNIFORM = new NibbleArray[16];
+    static {
+        for (int i = 0; i < UNIFORM.length; i++) {
+            UNIFORM[i] = new NibbleArray(null, i);
+        }
+    }
+
+    public static final NibbleArray EMPTY = UNIFORM[0];
+
+    private final byte[] data;
+    private final int value;
+
+    private NibbleArray(byte[] data, int value) {
+        this.data = data;
+        this.value = value;
+    }
+
+    public int get(int index) {
+        if (data == null) return value;
+        return MCAMath.getByteHalf(data[index >> 1], (index & 0x1) != 0);
+    }
+
+    public boolean isUniform() {
+        return data == null;
+    }
+
+    public int estimateMemorySize() {
+        return data == null ? 0 : 16 + data.length;
+    }
+
+    /**
+     * Returns a uniform nibble-array with the given value
+     */
+    public static NibbleArray of(int value) {
+        return UNIFORM[value & 0xF];
+    }
+
+    /**
+     * Creates a nibble-array from the raw data as it is stored in the chunk-data.
+     * Missing bytes at the end are treated as zeros, and an empty array results in an array of only zeros.<br>
+     * <i>The given array might be used directly, so it should not be modified afterwards.</i>
+     */
+    public static NibbleArray of(byte[] data) {
+        if (data.length == 0) return EMPTY;
+
+        byte first = data[0];
+        int value = first & 0xF;
+        boolean uniform = (first >> 4 & 0xF) == value && (data.length >= BYTE_COUNT || value == 0);
+        for (int i = 1; uniform && i < data.length; i++) {
+            if (data[i] != first) uniform = false;
+        }
+        if (uniform) return UNIFORM[value];
+
+        if (data.length < BYTE_COUNT) data = Arrays.copyOf(data, BYTE_COUNT);
+        return new NibbleArray(data, 0);
+    }
+
+}
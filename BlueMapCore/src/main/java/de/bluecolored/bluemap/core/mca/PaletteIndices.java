@@ -0,0 +1,104 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+/**
+ * The palette-indices of a chunk-section, which are kept in their packed form as stored in the chunk-data
+ * until they are accessed for the first time.<br>
+ * Then they are unpacked all at once into a flat byte- (or for large palettes short-) array,
+ * so that every following lookup is a single array-read.
+ */
+public class PaletteIndices {
+
+    private final int size;
+    private final int bitsPerValue;
+    private final boolean stream;
+
+    private long[] packed;
+    private volatile byte[] byteIndices;
+    private volatile short[] shortIndices;
+
+    /**
+     * @param packed the packed data
+     * @param bitsPerValue the bits that each index uses in the packed data
+     * @param size the amount of indices (e.g. 4096 for the blocks of a section)
+     * @param stream <code>true</code> if the data is stored as a continuous bit-stream (pre-1.16 chunks),
+     *               <code>false</code> if the values don't span over multiple longs (1.16+ chunks)
+     */
+    public PaletteIndices(long[] packed, int bitsPerValue, int size, boolean stream) {
+        this.packed = packed;
+        this.bitsPerValue = bitsPerValue;
+        this.size = size;
+        this.stream = stream;
+    }
+
+    public int get(int index) {
+        if (bitsPerValue <= 8) {
+            byte[] indices = this.byteIndices;
+            if (indices == null) indices = unpackBytes();
+            return indices[index] & 0xFF;
+        } else {
+            short[] indices = this.shortIndices;
+            if (indices == null) indices = unpackShorts();
+            return indices[index] & 0xFFFF;
+        }
+    }
+
+    private synchronized byte[] unpackBytes() {
+        if (byteIndices != null) return byteIndices;
+
+        byte[] indices = new byte[size];
+        if (bitsPerValue > 0) {
+            if (stream) MCAMath.unpackLongStream(packed, bitsPerValue, indices);
+            else MCAMath.unpackLongArray(packed, bitsPerValue, indices);
+        }
+
+        this.byteIndices = indices;
+        this.packed = null;
+        return indices;
+    }
+
+    private synchronized short[] unpackShorts() {
+        if (shortIndices != null) return shortIndices;
+
+        short[] indices = new short[size];
+        if (stream) MCAMath.unpackLongStream(packed, bitsPerValue, indices);
+        else MCAMath.unpackLongArray(packed, bitsPerValue, indices);
+
+        this.shortIndices = indices;
+        this.packed = null;
+        return indices;
+    }
+
+    /**
+     * Returns the estimated memory size of the unpacked indices, even if they are not unpacked yet.<br>
+     * (The size is usually only estimated once when the chunk is cached, and the indices will be unpacked
+     * as soon as the chunk is rendered)
+     */
+    public int estimateMemorySize() {
+        return 32 + (bitsPerValue <= 8 ? size : size * 2);
+    }
+
+}
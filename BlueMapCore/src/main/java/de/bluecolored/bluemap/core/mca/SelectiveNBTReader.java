@@ -0,0 +1,275 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import net.querz.nbt.*;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads NBT-data from a stream, but only materializes the parts of the data that are accepted by a {@link Filter}.<br>
+ * Everything else (e.g. entities, block-entities or structure-data of a chunk) is skipped while reading,
+ * without creating any tags or arrays for it.
+ */
+public class SelectiveNBTReader {
+
+    private static final int MAX_DEPTH = Tag.DEFAULT_MAX_DEPTH;
+
+    private static final byte
+            END = 0, BYTE = 1, SHORT = 2, INT = 3, LONG = 4, FLOAT = 5, DOUBLE = 6,
+            BYTE_ARRAY = 7, STRING = 8, LIST = 9, COMPOUND = 10, INT_ARRAY = 11, LONG_ARRAY = 12;
+
+    private final DataInput in;
+
+    public SelectiveNBTReader(DataInput in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the named root-tag and returns its value, only containing the data that is accepted by the filter.
+     */
+    public Tag<?> read(Filter filter) throws IOException {
+        byte type = in.readByte();
+        if (type == END) return null;
+
+        skipString(); // root name
+        return readTag(type, filter, 0);
+    }
+
+    private Tag<?> readTag(byte type, Filter filter, int depth) throws IOException {
+        switch (type) {
+            case BYTE: return new ByteTag(in.readByte());
+            case SHORT: return new ShortTag(in.readShort());
+            case INT: return new IntTag(in.readInt());
+            case LONG: return new LongTag(in.readLong());
+            case FLOAT: return new FloatTag(in.readFloat());
+            case DOUBLE: return new DoubleTag(in.readDouble());
+            case STRING: return new StringTag(in.readUTF());
+            case BYTE_ARRAY: {
+                byte[] data = new byte[readArrayLength()];
+                in.readFully(data);
+                return new ByteArrayTag(data);
+            }
+            case INT_ARRAY: {
+                int[] data = new int[readArrayLength()];
+                for (int i = 0; i < data.length; i++) data[i] = in.readInt();
+                return new IntArrayTag(data);
+            }
+            case LONG_ARRAY: {
+                long[] data = new long[readArrayLength()];
+                for (int i = 0; i < data.length; i++) data[i] = in.readLong();
+                return new LongArrayTag(data);
+            }
+            case LIST: return readList(filter, depth);
+            case COMPOUND: return readCompound(filter, depth);
+            default: throw new IOException("Invalid NBT tag-type: " + type);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ListTag<?> readList(Filter filter, int depth) throws IOException {
+        checkDepth(depth);
+
+        byte elementType = in.readByte();
+        int length = in.readInt();
+
+        ListTag<Tag<?>> list = (ListTag<Tag<?>>) ListTag.createUnchecked(length > 0 ? tagClass(elementType) : EndTag.class);
+        for (int i = 0; i < length; i++) {
+            list.add(readTag(elementType, filter, depth + 1));
+        }
+
+        return list;
+    }
+
+    private CompoundTag readCompound(Filter filter, int depth) throws IOException {
+        checkDepth(depth);
+
+        CompoundTag compound = new CompoundTag();
+        byte type;
+        while ((type = in.readByte()) != END) {
+            String key = in.readUTF();
+
+            Filter childFilter = filter.get(key);
+            if (childFilter == null) {
+                skipTag(type, depth + 1);
+                continue;
+            }
+
+            compound.put(key, readTag(type, childFilter, depth + 1));
+        }
+
+        return compound;
+    }
+
+    private void skipTag(byte type, int depth) throws IOException {
+        switch (type) {
+            case BYTE: skip(1); break;
+            case SHORT: skip(2); break;
+            case INT: case FLOAT: skip(4); break;
+            case LONG: case DOUBLE: skip(8); break;
+            case STRING: skipString(); break;
+            case BYTE_ARRAY: skip(readArrayLength()); break;
+            case INT_ARRAY: skip(readArrayLength() * 4L); break;
+            case LONG_ARRAY: skip(readArrayLength() * 8L); break;
+            case LIST: {
+                checkDepth(depth);
+
+                byte elementType = in.readByte();
+                int length = in.readInt();
+
+                int elementSize = fixedSize(elementType);
+                if (elementSize >= 0) {
+                    skip((long) length * elementSize);
+                } else {
+                    for (int i = 0; i < length; i++) skipTag(elementType, depth + 1);
+                }
+                break;
+            }
+            case COMPOUND: {
+                checkDepth(depth);
+
+                byte elementType;
+                while ((elementType = in.readByte()) != END) {
+                    skipString();
+                    skipTag(elementType, depth + 1);
+                }
+                break;
+            }
+            default: throw new IOException("Invalid NBT tag-type: " + type);
+        }
+    }
+
+    private void skipString() throws IOException {
+        skip(in.readUnsignedShort());
+    }
+
+    private void skip(long bytes) throws IOException {
+        while (bytes > 0) {
+            int skipped = in.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+            if (skipped <= 0) throw new EOFException();
+            bytes -= skipped;
+        }
+    }
+
+    private int readArrayLength() throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Invalid NBT array-length: " + length);
+        return length;
+    }
+
+    private static void checkDepth(int depth) throws IOException {
+        if (depth > MAX_DEPTH) throw new IOException("Reached maximum NBT depth of " + MAX_DEPTH);
+    }
+
+    /**
+     * Returns the size in bytes of the tag-type, or -1 if the tag-type has no fixed size
+     */
+    private static int fixedSize(byte type) {
+        switch (type) {
+            case END: return 0;
+            case BYTE: return 1;
+            case SHORT: return 2;
+            case INT: case FLOAT: return 4;
+            case LONG: case DOUBLE: return 8;
+            default: return -1;
+        }
+    }
+
+    private static Class<?> tagClass(byte type) throws IOException {
+        switch (type) {
+            case END: return EndTag.class;
+            case BYTE: return ByteTag.class;
+            case SHORT: return ShortTag.class;
+            case INT: return IntTag.class;
+            case LONG: return LongTag.class;
+            case FLOAT: return FloatTag.class;
+            case DOUBLE: return DoubleTag.class;
+            case BYTE_ARRAY: return ByteArrayTag.class;
+            case STRING: return StringTag.class;
+            case LIST: return ListTag.class;
+            case COMPOUND: return CompoundTag.class;
+            case INT_ARRAY: return IntArrayTag.class;
+            case LONG_ARRAY: return LongArrayTag.class;
+            default: throw new IOException("Invalid NBT tag-type: " + type);
+        }
+    }
+
+    /**
+     * Defines which entries of compound-tags should be read.<br>
+     * A filter applied to a list-tag is applied to each element of that list.
+     */
+    public static class Filter {
+
+        /**
+         * A filter accepting everything
+         */
+        public static final Filter ALL = new Filter(null);
+
+        private final Map<String, Filter> children;
+
+        private Filter(Map<String, Filter> children) {
+            this.children = children;
+        }
+
+        /**
+         * Returns the filter for the entry with the given key, or <code>null</code> if the entry should be skipped
+         */
+        public Filter get(String key) {
+            if (children == null) return ALL;
+            return children.get(key);
+        }
+
+        /**
+         * Returns a new filter additionally accepting the given key, with all of its content
+         */
+        public Filter with(String key) {
+            return with(key, ALL);
+        }
+
+        /**
+         * Returns a new filter additionally accepting the given key, with its content filtered by the given filter
+         */
+        public Filter with(String key, Filter filter) {
+            if (this.children == null) return this; // already accepting everything
+
+            Map<String, Filter> children = new HashMap<>(this.children);
+            children.put(key, filter);
+            return new Filter(children);
+        }
+
+        /**
+         * Creates a new filter that is not accepting any entries
+         */
+        public static Filter empty() {
+            return new Filter(new HashMap<>());
+        }
+
+    }
+
+}
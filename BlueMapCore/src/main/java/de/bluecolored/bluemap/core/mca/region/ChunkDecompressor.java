@@ -0,0 +1,173 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca.region;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Holds an {@link Inflater} and buffers that are reused for reading and decompressing chunks.<br>
+ * Each thread has its own pooled instance, so loading chunks does not create a new (native) inflater and
+ * new buffers for every chunk.<br>
+ * <br>
+ * An instance is acquired with {@link #acquire()} and returned to the pool when the {@link InputStream} created by it
+ * is closed (or with {@link #release()} if no stream has been created).
+ */
+final class ChunkDecompressor {
+
+    private static final int DEFAULT_INPUT_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_OUTPUT_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Buffers that grew larger than this are not kept in the pool, so a few huge chunks don't occupy memory forever
+     */
+    private static final int MAX_POOLED_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<ChunkDecompressor> POOL = ThreadLocal.withInitial(() -> new ChunkDecompressor(true));
+
+    private final boolean pooled;
+    private final Inflater inflater;
+
+    private byte[] inputBuffer;
+    private byte[] outputBuffer;
+
+    private volatile boolean inUse;
+
+    private ChunkDecompressor(boolean pooled) {
+        this.pooled = pooled;
+        this.inflater = new Inflater();
+        this.inputBuffer = new byte[DEFAULT_INPUT_BUFFER_SIZE];
+        this.outputBuffer = new byte[DEFAULT_OUTPUT_BUFFER_SIZE];
+        this.inUse = false;
+    }
+
+    /**
+     * Returns a buffer with at least the requested capacity to read raw chunk-data into.<br>
+     * The buffer is only valid until this decompressor is released.
+     */
+    public ByteBuffer getInputBuffer(int size) {
+        if (inputBuffer.length < size) inputBuffer = new byte[size];
+        return ByteBuffer.wrap(inputBuffer, 0, size).slice();
+    }
+
+    /**
+     * Returns a stream of the given data without any decompression (and without copying the data).
+     * Closing the stream releases this decompressor.
+     */
+    public InputStream wrap(byte[] data, int offset, int length) {
+        return new ReleasingInputStream(new ByteArrayInputStream(data, offset, length));
+    }
+
+    /**
+     * Returns a stream wrapping the given stream, that releases this decompressor when it is closed.
+     */
+    public InputStream wrap(InputStream in) {
+        return new ReleasingInputStream(in);
+    }
+
+    /**
+     * Completely inflates the given zlib-compressed data into the reusable output-buffer and
+     * returns a stream of the decompressed data. Closing the stream releases this decompressor.
+     */
+    public InputStream inflate(byte[] data, int offset, int length) throws IOException {
+        inflater.reset();
+        inflater.setInput(data, offset, length);
+
+        int size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (size == outputBuffer.length) outputBuffer = Arrays.copyOf(outputBuffer, outputBuffer.length * 2);
+
+                int inflated = inflater.inflate(outputBuffer, size, outputBuffer.length - size);
+                if (inflated == 0 && !inflater.finished()) {
+                    if (inflater.needsInput()) throw new IOException("Unexpected end of compressed chunk-data");
+                    if (inflater.needsDictionary()) throw new IOException("Compressed chunk-data needs a dictionary");
+                }
+
+                size += inflated;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Invalid compressed chunk-data", ex);
+        }
+
+        return wrap(outputBuffer, 0, size);
+    }
+
+    /**
+     * Returns this decompressor to the pool
+     */
+    public void release() {
+        if (!pooled) {
+            inflater.end();
+            return;
+        }
+
+        if (inputBuffer.length > MAX_POOLED_BUFFER_SIZE) inputBuffer = new byte[DEFAULT_INPUT_BUFFER_SIZE];
+        if (outputBuffer.length > MAX_POOLED_BUFFER_SIZE) outputBuffer = new byte[DEFAULT_OUTPUT_BUFFER_SIZE];
+
+        inUse = false;
+    }
+
+    /**
+     * Acquires the decompressor of the current thread.<br>
+     * If it is already in use (because a stream of it has not been closed yet), a new, not pooled decompressor is returned.
+     */
+    public static ChunkDecompressor acquire() {
+        ChunkDecompressor decompressor = POOL.get();
+        if (decompressor.inUse) return new ChunkDecompressor(false);
+
+        decompressor.inUse = true;
+        return decompressor;
+    }
+
+    private class ReleasingInputStream extends FilterInputStream {
+
+        private boolean closed = false;
+
+        private ReleasingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+
+            try {
+                super.close();
+            } finally {
+                release();
+            }
+        }
+
+    }
+
+}
@@ -25,6 +25,9 @@
 package de.bluecolored.bluemap.core.mca.region;
 
 import com.flowpowered.math.vector.Vector2i;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.mca.MCAChunk;
 import de.bluecolored.bluemap.core.mca.MCAWorld;
@@ -32,16 +35,17 @@
 import de.bluecolored.bluemap.core.world.EmptyChunk;
 import de.bluecolored.bluemap.core.world.Region;
 import io.airlift.compress.zstd.ZstdInputStream;
-import net.querz.nbt.CompoundTag;
-import net.querz.nbt.Tag;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class LinearRegion implements Region {
 
@@ -51,6 +55,8 @@ public class LinearRegion implements Region {
     private static final long SUPERBLOCK = -4323716122432332390L;
     private static final int HEADER_SIZE = 32;
     private static final int FOOTER_SIZE = 8;
+    private static final int CHUNK_COUNT = 1024;
+    private static final int CHUNK_TABLE_SIZE = CHUNK_COUNT * 8;
 
     private final MCAWorld world;
     private final Path regionFile;
@@ -70,64 +76,21 @@ public LinearRegion(MCAWorld world, Path regionFile) throws IllegalArgumentExcep
 
     @Override
     public Chunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData) throws IOException {
-        if (Files.notExists(regionFile)) return EmptyChunk.INSTANCE;
-
-        long fileLength = Files.size(regionFile);
-        if (fileLength == 0) return EmptyChunk.INSTANCE;
-
-        try (InputStream inputStream = Files.newInputStream(regionFile);
-             DataInputStream rawDataStream = new DataInputStream(inputStream)) {
-
-            long superBlock = rawDataStream.readLong();
-            if (superBlock != SUPERBLOCK)
-                throw new RuntimeException("Invalid superblock: " + superBlock + " file " + regionFile);
-
-            byte version = rawDataStream.readByte();
-            if (!SUPPORTED_VERSIONS.contains(version))
-                throw new RuntimeException("Invalid version: " + version + " file " + regionFile);
-
-            // Skip newestTimestamp (Long) + Compression level (Byte) + Chunk count (Short): Unused.
-            rawDataStream.skipBytes(11);
-
-            int dataCount = rawDataStream.readInt();
-            if (fileLength != HEADER_SIZE + dataCount + FOOTER_SIZE)
-                throw new RuntimeException("Invalid file length: " + this.regionFile + " " + fileLength + " " + (HEADER_SIZE + dataCount + FOOTER_SIZE));
-
-            // Skip data hash (Long): Unused.
-            rawDataStream.skipBytes(8);
-
-            byte[] rawCompressed = new byte[dataCount];
-            rawDataStream.readFully(rawCompressed, 0, dataCount);
-
-            superBlock = rawDataStream.readLong();
-            if (superBlock != SUPERBLOCK)
-                throw new RuntimeException("Invalid footer superblock: " + this.regionFile);
-
-            try (DataInputStream dis = new DataInputStream(new ZstdInputStream(new ByteArrayInputStream(rawCompressed)))) {
-                int x = chunkX - (regionPos.getX() << 5);
-                int z = chunkZ - (regionPos.getY() << 5);
-                int pos = (z << 5) + x;
-                int skip = 0;
-
-                for (int i = 0; i < pos; i++) {
-                    skip += dis.readInt(); // Size of the chunk (bytes) to skip
-                    dis.skipBytes(4); // Skip timestamps
-                }
+        try {
+            DecodedRegion region = getDecodedRegion();
+            if (region == null) return EmptyChunk.INSTANCE;
 
-                int size = dis.readInt();
-                if (size <= 0) return EmptyChunk.INSTANCE;
+            int x = chunkX - (regionPos.getX() << 5);
+            int z = chunkZ - (regionPos.getY() << 5);
+            int pos = (z << 5) + x;
 
-                dis.skipBytes(((1024 - pos - 1) << 3) + 4); // Skip current chunk 0 and unneeded other chunks zero/size
-                dis.skipBytes(skip); // Skip unneeded chunks data
+            int size = region.getChunkSize(pos);
+            if (size <= 0) return EmptyChunk.INSTANCE;
 
-                Tag<?> tag = Tag.deserialize(dis, Tag.DEFAULT_MAX_DEPTH);
-                if (tag instanceof CompoundTag) {
-                    MCAChunk chunk = MCAChunk.create(world, (CompoundTag) tag);
-                    if (!chunk.isGenerated()) return EmptyChunk.INSTANCE;
-                    return chunk;
-                } else {
-                    throw new IOException("Invalid data tag: " + (tag == null ? "null" : tag.getClass().getName()));
-                }
+            try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(region.data, region.getChunkOffset(pos), size))) {
+                MCAChunk chunk = MCAChunk.read(world, dis);
+                if (!chunk.isGenerated()) return EmptyChunk.INSTANCE;
+                return chunk;
             }
         } catch (RuntimeException e) {
             throw new IOException(e);
@@ -136,33 +99,27 @@ public Chunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData) t
 
     @Override
     public Collection<Vector2i> listChunks(long modifiedSince) {
-        if (Files.notExists(regionFile)) return Collections.emptyList();
-
-        long fileLength;
-        try {
-            fileLength = Files.size(regionFile);
-            if (fileLength == 0) return Collections.emptyList();
-        } catch (IOException ex) {
-            Logger.global.logWarning("Failed to read file-size for file: " + regionFile);
-            return Collections.emptyList();
-        }
-
         List<Vector2i> chunks = new ArrayList<>(1024); //1024 = 32 x 32 chunks per region-file
-        try (InputStream inputStream = Files.newInputStream(regionFile);
-             DataInputStream rawDataStream = new DataInputStream(inputStream)) {
-
-            long superBlock = rawDataStream.readLong();
-            if (superBlock != SUPERBLOCK)
-                throw new RuntimeException("Invalid superblock: " + superBlock + " file " + regionFile);
-
-            byte version = rawDataStream.readByte();
-            if (!SUPPORTED_VERSIONS.contains(version))
-                throw new RuntimeException("Invalid version: " + version + " file " + regionFile);
-
+        try {
             int date = (int) (modifiedSince / 1000);
 
             // If whole region is the same - skip.
-            long newestTimestamp = rawDataStream.readLong();
+            // (if the region is not cached, this only reads the file-header, so we don't need to decompress the data)
+            DecodedRegion region = getCachedDecodedRegion(getLastModified(regionFile));
+            byte version;
+            long newestTimestamp;
+            if (region != null) {
+                version = region.version;
+                newestTimestamp = region.newestTimestamp;
+            } else {
+                if (Files.notExists(regionFile) || Files.size(regionFile) == 0) return Collections.emptyList();
+                try (InputStream inputStream = Files.newInputStream(regionFile);
+                     DataInputStream rawDataStream = new DataInputStream(inputStream)) {
+                    version = readHeaderStart(rawDataStream, regionFile);
+                    newestTimestamp = rawDataStream.readLong();
+                }
+            }
+
             if (newestTimestamp < date) return Collections.emptyList();
 
             // Linear v1 files store whole region timestamp, not chunk timestamp. We need to render the whole region file.
@@ -171,31 +128,14 @@ public Collection<Vector2i> listChunks(long modifiedSince) {
                     chunks.add(new Vector2i((regionPos.getX() << 5) + (i & 31), (regionPos.getY() << 5) + (i >> 5)));
                 return chunks;
             }
-            // Linear v2: Chunk timestamps are here!
-            // Skip Compression level (Byte) + Chunk count (Short): Unused.
-            rawDataStream.skipBytes(3);
-
-            int dataCount = rawDataStream.readInt();
-            if (fileLength != HEADER_SIZE + dataCount + FOOTER_SIZE)
-                throw new RuntimeException("Invalid file length: " + this.regionFile + " " + fileLength + " " + (HEADER_SIZE + dataCount + FOOTER_SIZE));
-
-            // Skip data hash (Long): Unused.
-            rawDataStream.skipBytes(8);
-
-            byte[] rawCompressed = new byte[dataCount];
-            rawDataStream.readFully(rawCompressed, 0, dataCount);
 
-            superBlock = rawDataStream.readLong();
-            if (superBlock != SUPERBLOCK)
-                throw new RuntimeException("Invalid footer SuperBlock: " + this.regionFile);
+            if (region == null) region = getDecodedRegion();
+            if (region == null) return Collections.emptyList();
 
-            try (DataInputStream dis = new DataInputStream(new ZstdInputStream(new ByteArrayInputStream(rawCompressed)))) {
-                for (int i = 0; i < 1024; i++) {
-                    dis.skipBytes(4); // Skip size of the chunk
-                    int timestamp = dis.readInt();
-                    if (timestamp >= date) // Timestamps
-                        chunks.add(new Vector2i((regionPos.getX() << 5) + (i & 31), (regionPos.getY() << 5) + (i >> 5)));
-                }
+            // Linear v2: Chunk timestamps are here!
+            for (int i = 0; i < 1024; i++) {
+                if (region.getChunkTimestamp(i) >= date) // Timestamps
+                    chunks.add(new Vector2i((regionPos.getX() << 5) + (i & 31), (regionPos.getY() << 5) + (i >> 5)));
             }
         } catch (RuntimeException | IOException ex) {
             Logger.global.logWarning("Failed to read .linear file: " + regionFile + " (" + ex + ")");
@@ -208,8 +148,224 @@ public Path getRegionFile() {
         return regionFile;
     }
 
+    /**
+     * Returns the decompressed data of this region-file, only decompressing the file if there is no up-to-date
+     * version of it in the cache.<br>
+     * Returns <code>null</code> if the file does not exist or is empty.
+     */
+    private DecodedRegion getDecodedRegion() throws IOException {
+        long lastModified = getLastModified(regionFile);
+        if (lastModified == -1) return null;
+
+        return world.getLinearRegionCache().get(regionFile, lastModified);
+    }
+
+    private DecodedRegion getCachedDecodedRegion(long lastModified) {
+        return world.getLinearRegionCache().getIfPresent(regionFile, lastModified);
+    }
+
     public static String getRegionFileName(int regionX, int regionZ) {
         return "r." + regionX + "." + regionZ + FILE_SUFFIX;
     }
 
+    private static long getLastModified(Path file) throws IOException {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (NoSuchFileException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads and validates superblock and version, returns the version
+     */
+    private static byte readHeaderStart(DataInput rawDataStream, Path regionFile) throws IOException {
+        long superBlock = rawDataStream.readLong();
+        if (superBlock != SUPERBLOCK)
+            throw new RuntimeException("Invalid superblock: " + superBlock + " file " + regionFile);
+
+        byte version = rawDataStream.readByte();
+        if (!SUPPORTED_VERSIONS.contains(version))
+            throw new RuntimeException("Invalid version: " + version + " file " + regionFile);
+
+        return version;
+    }
+
+    /**
+     * A cache of decompressed region-files, so all chunks of a region can be loaded with only one decompression.<br>
+     * <br>
+     * <i>This class is thread-safe.</i>
+     */
+    public static class DecodedRegionCache {
+
+        /**
+         * How often we wait for a region that is currently decoded by a different thread, before we decode it ourselves
+         */
+        private static final int MAX_WAIT_ATTEMPTS = 3;
+
+        private final Cache<Path, DecodedRegion> cache;
+        private final Map<Path, CompletableFuture<DecodedRegion>> decoding;
+
+        /**
+         * @param maxMemory The maximum amount of bytes that the decompressed region-data is allowed to use
+         */
+        public DecodedRegionCache(long maxMemory) {
+            this.cache = Caffeine.newBuilder()
+                    .executor(BlueMap.THREAD_POOL)
+                    .maximumWeight(maxMemory)
+                    .weigher((Path path, DecodedRegion region) -> region.getSize())
+                    .expireAfterAccess(1, TimeUnit.MINUTES)
+                    .build();
+            this.decoding = new ConcurrentHashMap<>();
+        }
+
+        /**
+         * Returns the decoded region-file if it is cached and has been decoded from the file with the given
+         * last-modification time, otherwise returns <code>null</code>.
+         */
+        private DecodedRegion getIfPresent(Path regionFile, long lastModified) {
+            DecodedRegion region = cache.getIfPresent(regionFile);
+            if (region != null && region.lastModified == lastModified) return region;
+            return null;
+        }
+
+        /**
+         * Returns the decoded region-file, only decompressing the file if there is no up-to-date version of it cached.<br>
+         * Only one thread decodes a region at a time, other threads requesting the same region wait for it.
+         * The decoding happens outside of any cache- or map-operation, so it never blocks the requests for other regions.
+         */
+        private DecodedRegion get(Path regionFile, long lastModified) throws IOException {
+            for (int attempt = 0;; attempt++) {
+                DecodedRegion region = getIfPresent(regionFile, lastModified);
+                if (region != null) return region;
+
+                CompletableFuture<DecodedRegion> created = new CompletableFuture<>();
+                CompletableFuture<DecodedRegion> current = decoding.putIfAbsent(regionFile, created);
+                if (current == null) return decode(regionFile, created);
+
+                region = await(current);
+                if (region.lastModified >= lastModified || attempt >= MAX_WAIT_ATTEMPTS) return region;
+            }
+        }
+
+        private DecodedRegion decode(Path regionFile, CompletableFuture<DecodedRegion> future) throws IOException {
+            try {
+                DecodedRegion region = DecodedRegion.load(regionFile);
+                cache.put(regionFile, region);
+                future.complete(region);
+                return region;
+            } catch (IOException | RuntimeException ex) {
+                future.completeExceptionally(ex);
+                throw ex;
+            } finally {
+                decoding.remove(regionFile, future);
+            }
+        }
+
+        private static DecodedRegion await(CompletableFuture<DecodedRegion> future) throws IOException {
+            try {
+                return future.join();
+            } catch (CompletionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException(cause);
+            }
+        }
+
+    }
+
+    /**
+     * The completely decompressed data of a linear region-file together with a parsed index of all chunks in it.
+     */
+    private static class DecodedRegion {
+
+        private final long lastModified;
+        private final byte version;
+        private final long newestTimestamp;
+
+        private final byte[] data;
+        private final int[] chunkOffsets;
+
+        private DecodedRegion(long lastModified, byte version, long newestTimestamp, byte[] data) throws IOException {
+            this.lastModified = lastModified;
+            this.version = version;
+            this.newestTimestamp = newestTimestamp;
+            this.data = data;
+
+            if (data.length < CHUNK_TABLE_SIZE)
+                throw new IOException("Invalid decompressed data length: " + data.length);
+
+            // build chunk-index
+            this.chunkOffsets = new int[CHUNK_COUNT];
+            int offset = CHUNK_TABLE_SIZE;
+            for (int i = 0; i < CHUNK_COUNT; i++) {
+                chunkOffsets[i] = offset;
+
+                int size = getChunkSize(i);
+                if (size > 0) offset += size;
+            }
+
+            if (offset > data.length)
+                throw new IOException("Invalid decompressed data length: " + data.length + " (expected " + offset + ")");
+        }
+
+        public int getChunkSize(int index) {
+            return readInt(data, index << 3);
+        }
+
+        public int getChunkTimestamp(int index) {
+            return readInt(data, (index << 3) + 4);
+        }
+
+        public int getChunkOffset(int index) {
+            return chunkOffsets[index];
+        }
+
+        /**
+         * Approximate memory-size of this object in bytes
+         */
+        public int getSize() {
+            return data.length + chunkOffsets.length * 4 + 64;
+        }
+
+        public static DecodedRegion load(Path regionFile) throws IOException {
+            long lastModified = getLastModified(regionFile);
+            byte[] fileData = Files.readAllBytes(regionFile);
+            long fileLength = fileData.length;
+
+            try (DataInputStream rawDataStream = new DataInputStream(new ByteArrayInputStream(fileData))) {
+                byte version = readHeaderStart(rawDataStream, regionFile);
+                long newestTimestamp = rawDataStream.readLong();
+
+                // Skip Compression level (Byte) + Chunk count (Short): Unused.
+                rawDataStream.skipBytes(3);
+
+                int dataCount = rawDataStream.readInt();
+                if (fileLength != HEADER_SIZE + dataCount + FOOTER_SIZE)
+                    throw new RuntimeException("Invalid file length: " + regionFile + " " + fileLength + " " + (HEADER_SIZE + dataCount + FOOTER_SIZE));
+
+                long superBlock = ByteBuffer.wrap(fileData, HEADER_SIZE + dataCount, FOOTER_SIZE).getLong();
+                if (superBlock != SUPERBLOCK)
+                    throw new RuntimeException("Invalid footer superblock: " + regionFile);
+
+                byte[] data;
+                try (InputStream in = new ZstdInputStream(new ByteArrayInputStream(fileData, HEADER_SIZE, dataCount))) {
+                    data = in.readAllBytes();
+                }
+
+                return new DecodedRegion(lastModified, version, newestTimestamp, data);
+            }
+        }
+
+        private static int readInt(byte[] data, int index) {
+            return
+                    (data[index] & 0xFF) << 24 |
+                    (data[index + 1] & 0xFF) << 16 |
+                    (data[index + 2] & 0xFF) << 8 |
+                    data[index + 3] & 0xFF;
+        }
+
+    }
+
 }
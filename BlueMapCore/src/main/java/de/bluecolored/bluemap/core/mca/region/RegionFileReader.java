@@ -0,0 +1,404 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca.region;
+
+import net.querz.nbt.mca.CompressionType;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Reads chunk-data from an anvil-style region-file (.mca / .mcr) using positional {@link FileChannel}-reads.<br>
+ * The file is opened once and the location/timestamp header is only parsed again if the file has been modified,
+ * so loading all chunks of a region does not re-open the file for each chunk.<br>
+ * <br>
+ * <i>This class is thread-safe.</i>
+ */
+public class RegionFileReader implements Closeable {
+
+    public static final int SECTOR_SIZE = 4096;
+    public static final int HEADER_SIZE = 2 * SECTOR_SIZE;
+    public static final int CHUNK_COUNT = 1024;
+
+    private static final byte COMPRESSION_ZLIB = 2;
+    private static final byte COMPRESSION_NONE = 3;
+
+    /**
+     * The maximum amount of unneeded sectors between two chunks, that will be read anyway to merge two reads into one
+     */
+    private static final int MAX_READ_GAP = 8;
+
+    private final Path regionFile;
+
+    private FileChannel channel;
+    private int channelUsers;
+    private volatile Header header;
+    private boolean closed;
+
+    public RegionFileReader(Path regionFile) {
+        this.regionFile = regionFile;
+        this.channel = null;
+        this.channelUsers = 0;
+        this.header = null;
+        this.closed = false;
+    }
+
+    /**
+     * Returns the parsed header of the region-file.<br>
+     * The header is only read from disk if it has not been read yet, or if the region-file has been modified since.<br>
+     * Returns <code>null</code> if the region-file does not exist or is empty.
+     */
+    public Header getHeader() throws IOException {
+        Header header = this.header;
+        if (header == null || header.lastModified != getLastModified()) header = reloadHeader();
+        return header;
+    }
+
+    /**
+     * (Re-)reads the header of the region-file from disk with a single read.<br>
+     * Returns <code>null</code> if the region-file does not exist or is empty.
+     */
+    public synchronized Header reloadHeader() throws IOException {
+        long lastModified = getLastModified();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        if (lastModified == -1 || read(buffer, 0) < HEADER_SIZE) {
+            this.header = null;
+            return null;
+        }
+
+        buffer.flip();
+        this.header = new Header(buffer.asIntBuffer(), lastModified);
+        return this.header;
+    }
+
+    /**
+     * Reads the raw data of a chunk, starting with the 4-byte length and 1-byte compression-type of the chunk.<br>
+     * The returned buffer contains all sectors of the chunk as stated by the header.<br>
+     * Returns <code>null</code> if the chunk is not present in the region-file.
+     *
+     * @param chunkIndex The index of the chunk in the region-file: <code>z * 32 + x</code> (with x and z relative to the region)
+     */
+    public ByteBuffer readChunk(int chunkIndex) throws IOException {
+        Header header = getHeader();
+        if (header == null) return null;
+
+        int offset = header.getSectorOffset(chunkIndex);
+        int sectorCount = header.getSectorCount(chunkIndex);
+        if (offset < 2 || sectorCount == 0) return null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(sectorCount * SECTOR_SIZE);
+        int read = read(buffer, (long) offset * SECTOR_SIZE);
+        if (read < 5) throw new IOException("Chunk-data is outside of the region-file: " + regionFile);
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads the raw data of multiple chunks at once, in the order in which they are stored in the region-file.<br>
+     * Chunks that are close to each other in the file are read with a single read, so loading a lot of chunks
+     * results in a few sequential reads instead of many small random ones.<br>
+     * <br>
+     * Returns an array with the data of each requested chunk at its chunk-index (see {@link #readChunk(int)}),
+     * or <code>null</code> if the chunk is not present in the region-file.
+     *
+     * @param chunkIndices The indices of the chunks in the region-file: <code>z * 32 + x</code> (with x and z relative to the region)
+     */
+    public ByteBuffer[] readChunks(int... chunkIndices) throws IOException {
+        ByteBuffer[] chunks = new ByteBuffer[CHUNK_COUNT];
+
+        Header header = getHeader();
+        if (header == null) return chunks;
+
+        int[] sortedIndices = Arrays.stream(chunkIndices)
+                .distinct()
+                .filter(i -> header.getSectorOffset(i) >= 2 && header.getSectorCount(i) > 0)
+                .boxed()
+                .sorted(Comparator.comparingInt(header::getSectorOffset))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        int runStart = 0;
+        while (runStart < sortedIndices.length) {
+            int startSector = header.getSectorOffset(sortedIndices[runStart]);
+            int endSector = startSector + header.getSectorCount(sortedIndices[runStart]);
+
+            // extend the read as long as the next chunk is close enough
+            int runEnd = runStart + 1;
+            while (runEnd < sortedIndices.length) {
+                int nextSector = header.getSectorOffset(sortedIndices[runEnd]);
+                if (nextSector > endSector + MAX_READ_GAP) break;
+
+                endSector = Math.max(endSector, nextSector + header.getSectorCount(sortedIndices[runEnd]));
+                runEnd++;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((endSector - startSector) * SECTOR_SIZE);
+            int read = read(buffer, (long) startSector * SECTOR_SIZE);
+
+            for (int i = runStart; i < runEnd; i++) {
+                int chunkIndex = sortedIndices[i];
+                int position = (header.getSectorOffset(chunkIndex) - startSector) * SECTOR_SIZE;
+                int limit = position + header.getSectorCount(chunkIndex) * SECTOR_SIZE;
+
+                ByteBuffer chunk = buffer.duplicate();
+                chunk.limit(Math.max(Math.min(limit, read), position));
+                chunk.position(position);
+                chunks[chunkIndex] = chunk.slice();
+            }
+
+            runStart = runEnd;
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Reads the data of a chunk and returns an {@link InputStream} providing the decompressed chunk-data.<br>
+     * Returns <code>null</code> if the chunk is not present in the region-file.<br>
+     * <br>
+     * The stream uses pooled buffers and should always be closed.
+     *
+     * @param chunkIndex The index of the chunk in the region-file: <code>z * 32 + x</code> (with x and z relative to the region)
+     */
+    public InputStream openChunk(int chunkIndex) throws IOException {
+        Header header = getHeader();
+        if (header == null) return null;
+
+        int offset = header.getSectorOffset(chunkIndex);
+        int sectorCount = header.getSectorCount(chunkIndex);
+        if (offset < 2 || sectorCount == 0) return null;
+
+        ChunkDecompressor decompressor = ChunkDecompressor.acquire();
+        try {
+            ByteBuffer buffer = decompressor.getInputBuffer(sectorCount * SECTOR_SIZE);
+            int read = read(buffer, (long) offset * SECTOR_SIZE);
+            if (read < 5) throw new IOException("Chunk-data is outside of the region-file: " + regionFile);
+
+            buffer.flip();
+            return openChunk(buffer, decompressor);
+        } catch (IOException | RuntimeException ex) {
+            decompressor.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns an {@link InputStream} providing the decompressed chunk-data of the given raw chunk-data
+     * (as returned by {@link #readChunk(int)} or {@link #readChunks(int...)}).<br>
+     * <br>
+     * The stream uses pooled buffers and should always be closed.
+     */
+    public InputStream openChunk(ByteBuffer buffer) throws IOException {
+        ChunkDecompressor decompressor = ChunkDecompressor.acquire();
+        try {
+            return openChunk(buffer, decompressor);
+        } catch (IOException | RuntimeException ex) {
+            decompressor.release();
+            throw ex;
+        }
+    }
+
+    private InputStream openChunk(ByteBuffer buffer, ChunkDecompressor decompressor) throws IOException {
+        if (buffer.remaining() < 5) throw new IOException("Chunk-data is outside of the region-file: " + regionFile);
+
+        int length = buffer.getInt();
+        if (length <= 1 || length > buffer.remaining())
+            throw new IOException("Invalid chunk-length " + length + " in region-file: " + regionFile);
+
+        byte compressionTypeByte = buffer.get();
+        byte[] data = buffer.array();
+        int dataOffset = buffer.arrayOffset() + buffer.position();
+        int dataLength = length - 1;
+
+        // most common cases: inflate directly from the read buffer, using the pooled inflater and buffers
+        if (compressionTypeByte == COMPRESSION_ZLIB) return decompressor.inflate(data, dataOffset, dataLength);
+        if (compressionTypeByte == COMPRESSION_NONE) return decompressor.wrap(data, dataOffset, dataLength);
+
+        CompressionType compressionType = CompressionType.getFromID(compressionTypeByte);
+        if (compressionType == null) {
+            throw new IOException("Invalid compression type " + compressionTypeByte);
+        }
+
+        InputStream in = new ByteArrayInputStream(data, dataOffset, dataLength);
+        return decompressor.wrap(new BufferedInputStream(compressionType.decompress(in)));
+    }
+
+    private long getLastModified() throws IOException {
+        try {
+            return Files.getLastModifiedTime(regionFile).toMillis();
+        } catch (NoSuchFileException ex) {
+            return -1;
+        }
+    }
+
+    private int read(ByteBuffer buffer, long position) throws IOException {
+        FileChannel channel;
+        try {
+            channel = acquireChannel();
+        } catch (NoSuchFileException ex) {
+            return 0;
+        }
+
+        try {
+            return readFully(channel, buffer, position);
+        } catch (ClosedChannelException ex) {
+            // the channel might have been closed by an interrupt on a different thread, so we try again once with a new channel
+            buffer.clear();
+            return readFully(openChannel(), buffer, position);
+        } finally {
+            releaseChannel();
+        }
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) break;
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the (opened) channel and counts it as used until {@link #releaseChannel()} is called,
+     * so it is not closed while it is still being read from.
+     */
+    private synchronized FileChannel acquireChannel() throws IOException {
+        FileChannel channel = openChannel();
+        channelUsers++;
+        return channel;
+    }
+
+    private synchronized void releaseChannel() throws IOException {
+        channelUsers--;
+        if (closed && channelUsers <= 0) closeChannel();
+    }
+
+    private synchronized FileChannel openChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(regionFile, StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    private synchronized void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    public Path getRegionFile() {
+        return regionFile;
+    }
+
+    /**
+     * Closes the file once all reads that are currently in progress are finished.<br>
+     * The reader can still be used afterwards, but will then open the file again for each read
+     * (and close it once the read is finished).
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.closed = true;
+        this.header = null;
+        if (channelUsers <= 0) closeChannel();
+    }
+
+    public static int getChunkIndex(int chunkX, int chunkZ) {
+        return (chunkZ & 0x1F) << 5 | (chunkX & 0x1F);
+    }
+
+    /**
+     * The parsed location- and timestamp-tables of a region-file
+     */
+    public static class Header {
+
+        private final int[] locations;
+        private final int[] timestamps;
+        private final long lastModified;
+
+        private Header(IntBuffer data, long lastModified) {
+            this.lastModified = lastModified;
+            this.locations = new int[CHUNK_COUNT];
+            this.timestamps = new int[CHUNK_COUNT];
+
+            data.get(locations);
+            data.get(timestamps);
+        }
+
+        /**
+         * The offset of the chunk in sectors (4096 bytes) from the start of the file
+         */
+        public int getSectorOffset(int chunkIndex) {
+            return locations[chunkIndex] >>> 8;
+        }
+
+        /**
+         * The amount of sectors (4096 bytes) that the chunk occupies
+         */
+        public int getSectorCount(int chunkIndex) {
+            return locations[chunkIndex] & 0xFF;
+        }
+
+        public boolean isPresent(int chunkIndex) {
+            return getSectorCount(chunkIndex) != 0;
+        }
+
+        /**
+         * The last modification time of the chunk in seconds (unix-epoch)
+         */
+        public int getTimestamp(int chunkIndex) {
+            return timestamps[chunkIndex];
+        }
+
+        /**
+         * The last modification time (in milliseconds) of the region-file when this header was read
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * A value that changes whenever the chunk is written again:
+         * its timestamp (upper 32 bits) combined with its location in the file (lower 32 bits)
+         */
+        public long getChunkVersion(int chunkIndex) {
+            return (long) timestamps[chunkIndex] << 32 | (locations[chunkIndex] & 0xFFFFFFFFL);
+        }
+
+    }
+
+}
@@ -143,6 +143,11 @@ public enum BlockID {
 	private final HashMap<String, String> properties = new HashMap<>();
 	private final static BlockID[] VALUES = BlockID.values();
 	
+	// lookup-tables for block-ids 0-255 and metadata 0-15, so neighbour-checks don't need to search all values
+	private final static BlockID[] QUERY_TABLE = new BlockID[256 * 16];
+	private final static boolean[] OPAQUE_TABLE = new boolean[256];
+	private final static boolean[] FLAMMABLE_TABLE = new boolean[256];
+	
 	private BlockID(int i, int data, String value) {
 		this.id = i;
 		this.data = data;
@@ -162,6 +167,13 @@ public static BlockID query(int id) {
 	}
 
 	public static BlockID query(int id, int data) {
+		if (id >= 0 && id < 256 && data >= 0 && data < 16)
+			return QUERY_TABLE[id << 4 | data];
+		
+		return find(id, data);
+	}
+	
+	private static BlockID find(int id, int data) {
 		for (BlockID bid : VALUES) {
 			int cleardata = data;
 			if (isLeaves(bid))
@@ -236,11 +248,24 @@ public Map<String, String> getBasicProperties() {
 		REDSTONE_WIRE.putProperty("north", "side");
 	}
 	
+	static {
+		for (int id = 0; id < 256; id++) {
+			for (int data = 0; data < 16; data++) {
+				QUERY_TABLE[id << 4 | data] = find(id, data);
+			}
+			
+			OPAQUE_TABLE[id] = isOpaque(QUERY_TABLE[id << 4]);
+			FLAMMABLE_TABLE[id] = isFlammable(QUERY_TABLE[id << 4]);
+		}
+	}
+	
 	public static boolean isFlammable(int i) {
+		if (i >= 0 && i < 256) return FLAMMABLE_TABLE[i];
 		return isFlammable(query(i));
 	}
 	
 	public static boolean isOpaque(int i) {
+		if (i >= 0 && i < 256) return OPAQUE_TABLE[i];
 		return isOpaque(query(i));
 	}
 	
@@ -28,6 +28,7 @@
 import java.util.Map;
 
 import de.bluecolored.bluemap.core.mcr.region.WorldChunkManager.BiomeBase;
+import de.bluecolored.bluemap.core.world.BiomeIds;
 
 public class LegacyBiomes {
 
@@ -48,8 +49,23 @@ public class LegacyBiomes {
     	BIOME_IDS.put(BiomeBase.HELL, "minecraft:nether");
     }
 
+    private static final int[] BIOME_NUMERIC_IDS = new int[BiomeBase.values().length];
+    static {
+        for (BiomeBase base : BiomeBase.values()) {
+            String id = BIOME_IDS.get(base);
+            BIOME_NUMERIC_IDS[base.ordinal()] = id != null ? BiomeIds.idFor(id) : BiomeIds.DEFAULT;
+        }
+    }
+
     public static String idFor(BiomeBase base) {
         return BIOME_IDS.get(base);
     }
 
+    /**
+     * Returns the {@link BiomeIds id} of the biome for the given {@link BiomeBase}
+     */
+    public static int biomeIdFor(BiomeBase base) {
+        return BIOME_NUMERIC_IDS[base.ordinal()];
+    }
+
 }
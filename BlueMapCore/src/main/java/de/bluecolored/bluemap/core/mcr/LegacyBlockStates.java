@@ -0,0 +1,256 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mcr;
+
+import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.World;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Creates the {@link BlockState}s of McRegion- and alpha-chunks.<br>
+ * <br>
+ * A legacy block-state is fully defined by its block-id, its metadata and a few properties that depend on the
+ * neighbouring blocks (e.g. connected fences or the shape of chests). Those neighbour-properties are computed into a
+ * compact bitmask by {@link #neighbourFlags}, so that all three values together can be used as key to cache the
+ * (interned) block-states. Once all block-states of a world have been seen, no new objects are created anymore.
+ */
+public class LegacyBlockStates {
+
+    // neighbour-flags of grass-blocks
+    private static final int SNOWY = 1;
+
+    // neighbour-flags of nether-portals
+    private static final int AXIS_X = 1;
+
+    // neighbour-flags of fences and fire
+    private static final int WEST = 1, EAST = 2, NORTH = 4, SOUTH = 8, UP = 16;
+    private static final int FIRE_SUPPORTED = 32;
+
+    // neighbour-flags of chests: facing in bits 0-1, type in bits 2-3
+    private static final String[] CHEST_FACINGS = {"north", "south", "west", "east"};
+    private static final String[] CHEST_TYPES = {"single", "left", "right"};
+    private static final int CHEST_NORTH = 0, CHEST_SOUTH = 1, CHEST_WEST = 2, CHEST_EAST = 3;
+    private static final int CHEST_SINGLE = 0, CHEST_LEFT = 1 << 2, CHEST_RIGHT = 2 << 2;
+
+    private static final int FLAG_BITS = 6;
+
+    // indexed by neighbour-flags << 12 | metadata << 8 | block-id
+    private static final AtomicReferenceArray<BlockState> CACHE = new AtomicReferenceArray<>(1 << (12 + FLAG_BITS));
+
+    private LegacyBlockStates() {}
+
+    /**
+     * Returns the block-state for the given block-id (0-255), metadata (0-15) and {@link #neighbourFlags neighbour-flags}
+     */
+    public static BlockState get(int blockId, int metadata, int neighbourFlags) {
+        int key = neighbourFlags << 12 | metadata << 8 | blockId;
+
+        BlockState blockState = CACHE.get(key);
+        if (blockState == null) {
+            blockState = create(blockId, metadata, neighbourFlags);
+            CACHE.set(key, blockState);
+        }
+
+        return blockState;
+    }
+
+    /**
+     * Computes the bitmask of all properties of the block at the given position that depend on its neighbours.
+     *
+     * @param blocks The block-id array of the chunk containing the block (<code>x &lt;&lt; 11 | z &lt;&lt; 7 | y</code>),
+     *               used to look up the blocks above and below
+     * @param blockIdMask The mask that is applied to the values of the blocks-array to get the block-id
+     */
+    public static int neighbourFlags(World world, byte[] blocks, int blockIdMask, int blockId, int x, int y, int z) {
+        int index = (x & 0xF) << 11 | (z & 0xF) << 7 | y;
+
+        switch (blockId) {
+            case 2: { // grass
+                int blockIdAbove = 0;
+                if (y + 1 < 128) // avoid out of bounds
+                    blockIdAbove = blocks[index + 1] & blockIdMask;
+
+                return blockIdAbove == 78 || blockIdAbove == 80 ? SNOWY : 0;
+            }
+
+            case 90: { // portal
+                int blockIdXMin = blockIdAt(world, x - 1, y, z);
+                int blockIdXPlus = blockIdAt(world, x + 1, y, z);
+
+                return blockIdXMin == 90 || blockIdXPlus == 90 ? AXIS_X : 0;
+            }
+
+            case 85: { // fence
+                int flags = 0;
+                if (blockIdAt(world, x - 1, y, z) == 85) flags |= WEST;
+                if (blockIdAt(world, x + 1, y, z) == 85) flags |= EAST;
+                if (blockIdAt(world, x, y, z - 1) == 85) flags |= NORTH;
+                if (blockIdAt(world, x, y, z + 1) == 85) flags |= SOUTH;
+                return flags;
+            }
+
+            case 54: // chest
+                return chestFlags(world, x, y, z);
+
+            case 51: { // fire
+                int blockIdBelow = 0;
+                if (y - 1 >= 0) // avoid out of bounds
+                    blockIdBelow = blocks[index - 1] & blockIdMask;
+
+                if (BlockID.isOpaque(blockIdBelow) || blockIdBelow == 30 || blockIdBelow == 52 ||
+                        blockIdBelow == 85) // + web, spawner, fence
+                    return FIRE_SUPPORTED;
+
+                int flags = 0;
+                if (y + 1 < 128 && BlockID.isFlammable(blocks[index + 1] & blockIdMask)) flags |= UP;
+                if (BlockID.isFlammable(blockIdAt(world, x - 1, y, z))) flags |= WEST;
+                if (BlockID.isFlammable(blockIdAt(world, x, y, z - 1))) flags |= NORTH;
+                if (BlockID.isFlammable(blockIdAt(world, x + 1, y, z))) flags |= EAST;
+                if (BlockID.isFlammable(blockIdAt(world, x, y, z + 1))) flags |= SOUTH;
+                return flags;
+            }
+
+            default:
+                return 0;
+        }
+    }
+
+    private static int chestFlags(World world, int x, int y, int z) {
+        int blockIdXMin = blockIdAt(world, x - 1, y, z);
+        int blockIdXPlus = blockIdAt(world, x + 1, y, z);
+        int blockIdZMin = blockIdAt(world, x, y, z - 1);
+        int blockIdZPlus = blockIdAt(world, x, y, z + 1);
+
+        if (blockIdXMin == 54) {
+            if (BlockID.isOpaque(blockIdAt(world, x - 1, y, z + 1)) || BlockID.isOpaque(blockIdZPlus))
+                return CHEST_NORTH | CHEST_RIGHT;
+            return CHEST_SOUTH | CHEST_LEFT;
+        }
+
+        if (blockIdXPlus == 54) {
+            if (BlockID.isOpaque(blockIdAt(world, x + 1, y, z + 1)) || BlockID.isOpaque(blockIdZPlus))
+                return CHEST_NORTH | CHEST_LEFT;
+            return CHEST_SOUTH | CHEST_RIGHT;
+        }
+
+        if (blockIdZMin == 54) {
+            if (BlockID.isOpaque(blockIdAt(world, x + 1, y, z - 1)) || BlockID.isOpaque(blockIdXPlus))
+                return CHEST_WEST | CHEST_LEFT;
+            return CHEST_EAST | CHEST_RIGHT;
+        }
+
+        if (blockIdZPlus == 54) {
+            if (BlockID.isOpaque(blockIdAt(world, x + 1, y, z + 1)) || BlockID.isOpaque(blockIdXPlus))
+                return CHEST_WEST | CHEST_RIGHT;
+            return CHEST_EAST | CHEST_LEFT;
+        }
+
+        // singular chest
+        if (BlockID.isOpaque(blockIdZMin)) return CHEST_SOUTH | CHEST_SINGLE;
+        if (BlockID.isOpaque(blockIdXMin)) return CHEST_EAST | CHEST_SINGLE;
+        if (BlockID.isOpaque(blockIdZPlus)) return CHEST_NORTH | CHEST_SINGLE;
+        if (BlockID.isOpaque(blockIdXPlus)) return CHEST_WEST | CHEST_SINGLE;
+        return CHEST_SOUTH | CHEST_SINGLE;
+    }
+
+    private static int blockIdAt(World world, int x, int y, int z) {
+        return world.getChunkAtBlock(x, y, z).fromBlocksArray(x, y, z);
+    }
+
+    private static BlockState create(int blockId, int metadata, int neighbourFlags) {
+        BlockID bid = BlockID.query(blockId, metadata);
+
+        if (bid == null)
+            bid = BlockID.query(blockId);
+
+        if (bid == null)
+            return BlockState.MISSING;
+
+        Map<String, String> properties = BlockID.metadataToProperties(bid, metadata);
+
+        switch (blockId) {
+            case 2: // grass
+                properties.put("snowy", (neighbourFlags & SNOWY) != 0 ? "true" : "false");
+                break;
+
+            case 90: // portal
+                properties.put("axis", (neighbourFlags & AXIS_X) != 0 ? "x" : "z");
+                break;
+
+            case 85: // fence
+                if ((neighbourFlags & WEST) != 0) properties.put("west", "true");
+                if ((neighbourFlags & EAST) != 0) properties.put("east", "true");
+                if ((neighbourFlags & NORTH) != 0) properties.put("north", "true");
+                if ((neighbourFlags & SOUTH) != 0) properties.put("south", "true");
+                break;
+
+            case 54: // chest
+                properties.put("facing", CHEST_FACINGS[neighbourFlags & 0x3]);
+                properties.put("type", CHEST_TYPES[neighbourFlags >> 2 & 0x3]);
+                break;
+
+            case 64: case 71: // doors
+                // the hinge is always on the left. right-hinge doors are just of different facing
+                properties.put("hinge", "left");
+                properties.put("powered", "false");
+                properties.put("half", metadata < 8 ? "lower" : "upper");
+                properties.put("open", metadata % 8 < 4 ? "false" : "true");
+
+                int facing = metadata % 4;
+                if (facing == 0)
+                    properties.put("facing", "east");
+                else if (facing == 1)
+                    properties.put("facing", "south");
+                else if (facing == 2)
+                    properties.put("facing", "west");
+                else
+                    properties.put("facing", "north");
+                break;
+
+            case 51: // fire
+                if ((neighbourFlags & FIRE_SUPPORTED) != 0) {
+                    properties.put("west", "false");
+                    properties.put("east", "false");
+                    properties.put("north", "false");
+                    properties.put("south", "false");
+                    properties.put("up", "false");
+                } else {
+                    if ((neighbourFlags & UP) != 0) properties.put("up", "true");
+                    if ((neighbourFlags & WEST) != 0) properties.put("west", "true");
+                    if ((neighbourFlags & NORTH) != 0) properties.put("north", "true");
+                    if ((neighbourFlags & EAST) != 0) properties.put("east", "true");
+                    if ((neighbourFlags & SOUTH) != 0) properties.put("south", "true");
+                }
+                break;
+
+            // redstone-wire and signs are not supported yet
+        }
+
+        return new BlockState(bid.getModernId(), properties).intern();
+    }
+
+}
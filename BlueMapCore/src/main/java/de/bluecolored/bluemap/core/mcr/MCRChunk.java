@@ -68,7 +68,7 @@ public int getDataVersion() {
     public abstract LightData getLightData(int x, int y, int z, LightData target);
 
     @Override
-    public abstract String getBiome(int x, int y, int z);
+    public abstract int getBiomeId(int x, int y, int z);
 
     @Override
     public int getMaxY(int x, int z) {
@@ -39,6 +39,7 @@
 import com.flowpowered.math.vector.Vector3i;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 
 import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.core.BlueMap;
@@ -47,7 +48,8 @@
 import de.bluecolored.bluemap.core.mcr.region.WorldChunkManager;
 import de.bluecolored.bluemap.core.util.Vector2iCache;
 import de.bluecolored.bluemap.core.world.Chunk;
-import de.bluecolored.bluemap.core.world.EmptyChunk;
+import de.bluecolored.bluemap.core.world.ChunkCache;
+import de.bluecolored.bluemap.core.world.ChunkLoadFailures;
 import de.bluecolored.bluemap.core.world.Grid;
 import de.bluecolored.bluemap.core.world.Region;
 import de.bluecolored.bluemap.core.world.World;
@@ -68,15 +70,19 @@ public class MCRWorld implements World {
     private final Vector3i spawnPoint;
     private final long seed;
     
-    protected WorldChunkManager wcm;
+    protected ThreadLocal<WorldChunkManager> wcm;
 
     private final int skyLight;
     private final boolean ignoreMissingLightData;
 
     private final LoadingCache<Vector2i, Region> regionCache;
-    private final LoadingCache<Vector2i, Chunk> chunkCache;
+    private final ChunkCache chunkCache;
 
     public MCRWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData) throws IOException {
+        this(worldFolder, skyLight, ignoreMissingLightData, ChunkCache.DEFAULT_MAX_MEMORY);
+    }
+
+    public MCRWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData, long chunkCacheMemory) throws IOException {
         this.worldFolder = worldFolder.toRealPath();
         this.skyLight = skyLight;
         this.ignoreMissingLightData = ignoreMissingLightData;
@@ -85,13 +91,10 @@ public MCRWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData)
                 .executor(BlueMap.THREAD_POOL)
                 .maximumSize(100)
                 .expireAfterWrite(1, TimeUnit.MINUTES)
+                .removalListener(this::onRegionRemoved)
                 .build(this::loadRegion);
 
-        this.chunkCache = Caffeine.newBuilder()
-                .executor(BlueMap.THREAD_POOL)
-                .maximumSize(500)
-                .expireAfterWrite(1, TimeUnit.MINUTES)
-                .build(this::loadChunk);
+        this.chunkCache = new ChunkCache(chunkCacheMemory, this::loadChunk, this::getChunkVersion);
 
         try {
             Path levelFile = resolveLevelFile(worldFolder);
@@ -112,7 +115,7 @@ public MCRWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData)
             throw new IOException("Invalid level.dat format!", ex);
         }
         
-        this.wcm = new WorldChunkManager(this);
+        this.wcm = WorldChunkManager.threadLocal(this);
     }
 
     @Override
@@ -122,11 +125,7 @@ public Chunk getChunkAtBlock(int x, int y, int z) {
 
     @Override
     public Chunk getChunk(int x, int z) {
-        return getChunk(VECTOR_2_I_CACHE.get(x, z));
-    }
-
-    private Chunk getChunk(Vector2i pos) {
-        return chunkCache.get(pos);
+        return chunkCache.get(x, z);
     }
 
     @Override
@@ -206,6 +205,22 @@ public Vector3i getSpawnPoint() {
         return spawnPoint;
     }
 
+    @Override
+    public void preloadRegionChunks(int regionX, int regionZ, Collection<Vector2i> chunks) {
+        List<Vector2i> regionChunks = new ArrayList<>();
+        for (Vector2i chunk : chunks) {
+            if (chunk.getX() >> 5 == regionX && chunk.getY() >> 5 == regionZ) regionChunks.add(chunk);
+        }
+
+        if (regionChunks.isEmpty()) return;
+
+        try {
+            chunkCache.preload(getRegion(regionX, regionZ), regionChunks, ignoreMissingLightData);
+        } catch (IOException | RuntimeException ex) {
+            Logger.global.logDebug("Failed to preload chunks of region (x:" + regionX + ", z:" + regionZ + "): " + ex);
+        }
+    }
+
     @Override
     public void invalidateChunkCache() {
         chunkCache.invalidateAll();
@@ -213,7 +228,7 @@ public void invalidateChunkCache() {
 
     @Override
     public void invalidateChunkCache(int x, int z) {
-        chunkCache.invalidate(VECTOR_2_I_CACHE.get(x, z));
+        chunkCache.invalidate(x, z);
     }
 
     @Override
@@ -221,14 +236,36 @@ public void cleanUpChunkCache() {
         chunkCache.cleanUp();
     }
 
+    @Override
+    public ChunkLoadFailures getChunkLoadFailures() {
+        return chunkCache.getLoadFailures();
+    }
+
     public Path getWorldFolder() {
         return worldFolder;
     }
 
-    private Path getRegionFolder() {
+    @Override
+    public Path getRegionFolder() {
         return worldFolder.resolve("region");
     }
 
+    @Override
+    public Vector2i getRegionPosition(Path file) {
+        String fileName = file.getFileName().toString();
+        if (RegionType.forFileName(fileName) == null) return null;
+
+        try {
+            String[] filenameParts = fileName.split("\\.");
+            int rX = Integer.parseInt(filenameParts[1]);
+            int rZ = Integer.parseInt(filenameParts[2]);
+
+            return VECTOR_2_I_CACHE.get(rX, rZ);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ignore) {
+            return null;
+        }
+    }
+
     public boolean isIgnoreMissingLightData() {
         return ignoreMissingLightData;
     }
@@ -241,36 +278,19 @@ Region loadRegion(int x, int z) {
         return RegionType.loadRegion(this, getRegionFolder(), x, z);
     }
 
-    private Chunk loadChunk(Vector2i chunkPos) {
-        return loadChunk(chunkPos.getX(), chunkPos.getY());
-    }
-
-    Chunk loadChunk(int x, int z) {
-        final int tries = 3;
-        final int tryInterval = 1000;
+    private void onRegionRemoved(Vector2i regionPos, Region region, RemovalCause cause) {
+        if (region == null) return;
 
-        Exception loadException = null;
-        for (int i = 0; i < tries; i++) {
-            try {
-                return getRegion(x >> 5, z >> 5)
-                        .loadChunk(x, z, ignoreMissingLightData);
-            } catch (IOException | RuntimeException e) {
-                if (loadException != null) e.addSuppressed(loadException);
-                loadException = e;
-
-                if (i + 1 < tries) {
-                    try {
-                        Thread.sleep(tryInterval);
-                    } catch (InterruptedException ex) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-            }
+        try {
+            region.close();
+        } catch (IOException ex) {
+            Logger.global.logDebug("Failed to close region (x:" + regionPos.getX() + ", z:" + regionPos.getY() + "): " + ex);
         }
+    }
 
-        Logger.global.logDebug("Unexpected exception trying to load chunk (x:" + x + ", z:" + z + "):" + loadException);
-        return EmptyChunk.INSTANCE;
+    Chunk loadChunk(int x, int z) throws IOException {
+        return getRegion(x >> 5, z >> 5)
+                .loadChunk(x, z, ignoreMissingLightData);
     }
 
 
@@ -24,21 +24,25 @@
  */
 package de.bluecolored.bluemap.core.mcr.region;
 
-import java.io.BufferedInputStream;
 import java.io.DataInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import com.flowpowered.math.vector.Vector2i;
 
+import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.mca.region.RegionFileReader;
 import de.bluecolored.bluemap.core.mcr.MCRChunk;
 import de.bluecolored.bluemap.core.mcr.MCRWorld;
 import de.bluecolored.bluemap.core.world.Chunk;
@@ -47,7 +51,6 @@
 import de.bluecolored.bluemap.core.world.World;
 import net.querz.nbt.CompoundTag;
 import net.querz.nbt.Tag;
-import net.querz.nbt.mca.CompressionType;
 
 public class MCRRegion implements Region {
 
@@ -56,10 +59,12 @@ public class MCRRegion implements Region {
     private final MCRWorld world;
     private final Path regionFile;
     private final Vector2i regionPos;
+    private final RegionFileReader reader;
 
     public MCRRegion(World world, Path regionFile) throws IllegalArgumentException {
         this.world = (MCRWorld) world;
         this.regionFile = regionFile;
+        this.reader = new RegionFileReader(regionFile);
 
         String[] filenameParts = regionFile.getFileName().toString().split("\\.");
         int rX = Integer.parseInt(filenameParts[1]);
@@ -70,40 +75,49 @@ public MCRRegion(World world, Path regionFile) throws IllegalArgumentException {
 
     @Override
     public Chunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData) throws IOException {
-        if (Files.notExists(regionFile)) return EmptyChunk.INSTANCE;
-
-        long fileLength = Files.size(regionFile);
-        if (fileLength == 0) return EmptyChunk.INSTANCE;
-
-        try (RandomAccessFile raf = new RandomAccessFile(regionFile.toFile(), "r")) {
-
-            int xzChunk = Math.floorMod(chunkZ, 32) * 32 + Math.floorMod(chunkX, 32);
+        return loadChunk(reader.openChunk(RegionFileReader.getChunkIndex(chunkX, chunkZ)));
+    }
 
-            raf.seek(xzChunk * 4L);
-            int offset = raf.read() << 16;
-            offset |= (raf.read() & 0xFF) << 8;
-            offset |= raf.read() & 0xFF;
-            offset *= 4096;
+    @Override
+    public Map<Vector2i, Chunk> loadChunks(Collection<Vector2i> chunks, boolean ignoreMissingLightData) throws IOException {
+        // read all chunks sequentially in the order they are stored in the file
+        ByteBuffer[] chunkData = reader.readChunks(chunks.stream()
+                .mapToInt(chunk -> RegionFileReader.getChunkIndex(chunk.getX(), chunk.getY()))
+                .toArray());
+
+        // decompress and parse them in parallel
+        Map<Vector2i, CompletableFuture<Chunk>> futures = new HashMap<>();
+        for (Vector2i chunk : chunks) {
+            ByteBuffer data = chunkData[RegionFileReader.getChunkIndex(chunk.getX(), chunk.getY())];
+            futures.put(chunk, CompletableFuture.supplyAsync(() -> {
+                try {
+                    return loadChunk(data == null ? null : reader.openChunk(data));
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, BlueMap.THREAD_POOL));
+        }
 
-            int size = raf.readByte() * 4096;
-            if (size == 0) {
-                return EmptyChunk.INSTANCE;
+        Map<Vector2i, Chunk> loadedChunks = new HashMap<>();
+        for (Map.Entry<Vector2i, CompletableFuture<Chunk>> entry : futures.entrySet()) {
+            try {
+                loadedChunks.put(entry.getKey(), entry.getValue().join());
+            } catch (CompletionException ex) {
+                Logger.global.logDebug("Failed to load chunk " + entry.getKey() + " from region-file " + regionFile + ": " + ex.getCause());
             }
+        }
 
-            raf.seek(offset + 4); // +4 skip chunk size
+        return loadedChunks;
+    }
 
-            byte compressionTypeByte = raf.readByte();
-            CompressionType compressionType = compressionTypeByte == 3 ?
-                            CompressionType.NONE :
-                            CompressionType.getFromID(compressionTypeByte);
-            if (compressionType == null) {
-                throw new IOException("Invalid compression type " + compressionTypeByte);
-            }
+    private Chunk loadChunk(InputStream chunkIn) throws IOException {
+        try (InputStream in = chunkIn) {
+            if (in == null) return EmptyChunk.INSTANCE;
 
-            DataInputStream dis = new DataInputStream(new BufferedInputStream(compressionType.decompress(new FileInputStream(raf.getFD()))));
+            DataInputStream dis = new DataInputStream(in);
             Tag<?> tag = Tag.deserialize(dis, Tag.DEFAULT_MAX_DEPTH);
             if (tag instanceof CompoundTag) {
-            	MCRChunk chunk = MCRChunk.create(world, (CompoundTag) tag);
+                MCRChunk chunk = MCRChunk.create(world, (CompoundTag) tag);
                 if (!chunk.isGenerated()) return EmptyChunk.INSTANCE;
                 return chunk;
             } else {
@@ -117,52 +131,54 @@ public Chunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData) t
 
     @Override
     public Collection<Vector2i> listChunks(long modifiedSince) {
-        if (Files.notExists(regionFile)) return Collections.emptyList();
-
+        RegionFileReader.Header header;
         try {
-            long fileLength = Files.size(regionFile);
-            if (fileLength == 0) return Collections.emptyList();
+            header = reader.reloadHeader();
         } catch (IOException ex) {
-            Logger.global.logWarning("Failed to read file-size for file: " + regionFile);
+            Logger.global.logWarning("Failed to read .mcr file: " + regionFile + " (" + ex + ")");
             return Collections.emptyList();
         }
 
-        List<Vector2i> chunks = new ArrayList<>(1024); //1024 = 32 x 32 chunks per region-file
-
-        try (RandomAccessFile raf = new RandomAccessFile(regionFile.toFile(), "r")) {
-            for (int x = 0; x < 32; x++) {
-                for (int z = 0; z < 32; z++) {
-                    Vector2i chunk = new Vector2i(regionPos.getX() * 32 + x, regionPos.getY() * 32 + z);
-                    int xzChunk = z * 32 + x;
-
-                    raf.seek(xzChunk * 4 + 3);
-                    int size = raf.readByte() * 4096;
+        if (header == null) return Collections.emptyList();
 
-                    if (size == 0) continue;
+        List<Vector2i> chunks = new ArrayList<>(1024); //1024 = 32 x 32 chunks per region-file
 
-                    raf.seek(xzChunk * 4 + 4096);
-                    int timestamp = raf.read() << 24;
-                    timestamp |= (raf.read() & 0xFF) << 16;
-                    timestamp |= (raf.read() & 0xFF) << 8;
-                    timestamp |= raf.read() & 0xFF;
+        for (int x = 0; x < 32; x++) {
+            for (int z = 0; z < 32; z++) {
+                int xzChunk = z * 32 + x;
+                if (!header.isPresent(xzChunk)) continue;
 
-                    if (timestamp >= (modifiedSince / 1000)) {
-                        chunks.add(chunk);
-                    }
+                int timestamp = header.getTimestamp(xzChunk);
+                if (timestamp >= (modifiedSince / 1000)) {
+                    chunks.add(new Vector2i(regionPos.getX() * 32 + x, regionPos.getY() * 32 + z));
                 }
             }
-        } catch (RuntimeException | IOException ex) {
-            Logger.global.logWarning("Failed to read .mcr file: " + regionFile + " (" + ex + ")");
         }
 
         return chunks;
     }
 
+    @Override
+    public long getChunkVersion(int chunkX, int chunkZ) {
+        try {
+            RegionFileReader.Header header = reader.getHeader();
+            if (header == null) return -1;
+            return header.getChunkVersion(RegionFileReader.getChunkIndex(chunkX, chunkZ));
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
     @Override
     public Path getRegionFile() {
         return regionFile;
     }
 
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
     public static String getRegionFileName(int regionX, int regionZ) {
         return "r." + regionX + "." + regionZ + FILE_SUFFIX;
     }
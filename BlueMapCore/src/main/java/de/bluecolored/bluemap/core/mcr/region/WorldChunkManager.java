@@ -3,9 +3,17 @@
 
 import java.util.Random;
 
+import de.bluecolored.bluemap.core.mcr.LegacyBiomes;
 import de.bluecolored.bluemap.core.mcr.MCRWorld;
+import de.bluecolored.bluemap.core.world.BiomeIds;
 import de.bluecolored.bluemap.core.world.World;
 
+/**
+ * Generates the biomes of McRegion- and alpha-worlds from the world-seed.<br>
+ * <br>
+ * <i>Instances of this class reuse internal buffers and are <b>not</b> thread-safe,
+ * use one instance per thread (see {@link #threadLocal(World)})</i>
+ */
 public class WorldChunkManager {
 
     private NoiseGeneratorOctaves2 e;
@@ -24,6 +32,27 @@ public WorldChunkManager(World world) {
         this.g = new NoiseGeneratorOctaves2(new Random(world.getSeed() * 543321L), 2);
     }
 
+    /**
+     * Creates a {@link ThreadLocal} that lazily creates a separate {@link WorldChunkManager} for each thread
+     */
+    public static ThreadLocal<WorldChunkManager> threadLocal(World world) {
+        return ThreadLocal.withInitial(() -> new WorldChunkManager(world));
+    }
+
+    /**
+     * Generates the biomes of all 16x16 block-columns of a chunk in one batch.<br>
+     * Returns their {@link BiomeIds} indexed by <code>(x &amp; 0xF) * 16 + (z &amp; 0xF)</code>
+     */
+    public int[] getChunkBiomeIds(int chunkX, int chunkZ) {
+        BiomeBase[] biomes = this.getBiomeData(chunkX << 4, chunkZ << 4, 16, 16);
+
+        int[] biomeIds = new int[256];
+        for (int i = 0; i < biomeIds.length; i++) {
+            biomeIds[i] = LegacyBiomes.biomeIdFor(biomes[i]);
+        }
+        return biomeIds;
+    }
+
     public BiomeBase getBiome(int i, int j) {
         return this.getBiomeData(i, j, 1, 1)[0];
     }
@@ -29,11 +29,13 @@
 import de.bluecolored.bluemap.core.resources.adapter.ResourcesGson;
 import de.bluecolored.bluemap.core.resources.biome.datapack.DpBiome;
 import de.bluecolored.bluemap.core.world.Biome;
+import de.bluecolored.bluemap.core.world.BiomeIds;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -42,8 +44,15 @@ public class BiomeConfig {
 
     private final Map<String, Biome> biomes;
 
+    /**
+     * All loaded biomes, indexed by their {@link BiomeIds id}.<br>
+     * Ids that are assigned after the biomes have been loaded are added lazily by {@link #getBiome(int)}.
+     */
+    private volatile Biome[] biomeTable;
+
     public BiomeConfig() {
         biomes = new HashMap<>();
+        biomeTable = new Biome[0];
     }
 
     public void load(Path configFile) throws IOException {
@@ -59,7 +68,7 @@ public void load(Path configFile) throws IOException {
                 Biome biome = entry.createBiome(formatted);
 
                 // don't overwrite already present values, higher priority resources are loaded first
-                biomes.putIfAbsent(biome.getFormatted(), biome);
+                putIfAbsent(biome);
             }
 
             json.endObject();
@@ -79,12 +88,47 @@ public void loadDatapackBiome(String namespace, Path biomeFile) throws IOExcepti
             Biome biome = dpBiome.createBiome(formatted);
 
             // don't overwrite already present values, higher priority resources are loaded first
-            biomes.putIfAbsent(biome.getFormatted(), biome);
+            putIfAbsent(biome);
         }
     }
 
+    private synchronized void putIfAbsent(Biome biome) {
+        if (biomes.putIfAbsent(biome.getFormatted(), biome) != null) return;
+
+        int id = BiomeIds.idFor(biome.getFormatted());
+        Biome[] table = Arrays.copyOf(biomeTable, Math.max(biomeTable.length, BiomeIds.size()));
+        table[id] = biome;
+        biomeTable = table;
+    }
+
     public Biome getBiome(String formatted) {
         return biomes.getOrDefault(formatted, Biome.DEFAULT);
     }
 
+    /**
+     * Returns the biome with the given {@link BiomeIds id}, or {@link Biome#DEFAULT} if there is no such biome
+     */
+    public Biome getBiome(int id) {
+        Biome[] table = biomeTable;
+        if (id < table.length) {
+            Biome biome = table[id];
+            if (biome != null) return biome;
+        }
+
+        return resolveBiome(id);
+    }
+
+    private synchronized Biome resolveBiome(int id) {
+        Biome[] table = biomeTable;
+        if (id < table.length && table[id] != null) return table[id];
+
+        // copy the table instead of modifying it, so that unsynchronized readers never see a partially published biome
+        table = Arrays.copyOf(table, Math.max(table.length, Math.max(id + 1, BiomeIds.size())));
+        Biome biome = biomes.getOrDefault(BiomeIds.keyFor(id), Biome.DEFAULT);
+        table[id] = biome;
+
+        biomeTable = table;
+        return biome;
+    }
+
 }
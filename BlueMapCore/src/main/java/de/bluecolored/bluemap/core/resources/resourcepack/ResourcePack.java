@@ -24,8 +24,6 @@
  */
 package de.bluecolored.bluemap.core.resources.resourcepack;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import de.bluecolored.bluemap.api.debug.DebugDump;
@@ -39,10 +37,13 @@
 import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.BlockModel;
 import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.TextureVariable;
 import de.bluecolored.bluemap.core.resources.resourcepack.blockstate.BlockState;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockstate.Variant;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockstate.VariantSet;
 import de.bluecolored.bluemap.core.resources.resourcepack.texture.Texture;
 import de.bluecolored.bluemap.core.util.Tristate;
 import de.bluecolored.bluemap.core.world.Biome;
 import de.bluecolored.bluemap.core.world.BlockProperties;
+import de.bluecolored.bluemap.core.world.BlockStateArray;
 import org.jetbrains.annotations.Nullable;
 
 import javax.imageio.ImageIO;
@@ -68,6 +69,8 @@ public class ResourcePack {
     public static final ResourcePath<BlockModel> MISSING_BLOCK_MODEL = new ResourcePath<>("bluemap", "block/missing");
     public static final ResourcePath<Texture> MISSING_TEXTURE = new ResourcePath<>("bluemap", "block/missing");
 
+    private static final VariantSet[] NO_VARIANT_SETS = new VariantSet[0];
+
     private final Map<String, ResourcePath<BlockState>> blockStatePaths;
     private final Map<ResourcePath<BlockState>, BlockState> blockStates;
     private final Map<String, ResourcePath<BlockModel>> blockModelPaths;
@@ -80,7 +83,9 @@ public class ResourcePack {
     private final BiomeConfig biomeConfig;
     private final BlockPropertiesConfig blockPropertiesConfig;
 
-    private final LoadingCache<de.bluecolored.bluemap.core.world.BlockState, BlockProperties> blockPropertiesCache;
+    private final BlockStateArray<BlockState> blockStateResources;
+    private final BlockStateArray<VariantSet[]> blockStateVariants;
+    private final BlockStateArray<BlockProperties> blockProperties;
 
     public ResourcePack() {
         this.blockStatePaths = new HashMap<>();
@@ -95,10 +100,9 @@ public ResourcePack() {
         this.biomeConfig = new BiomeConfig();
         this.blockPropertiesConfig = new BlockPropertiesConfig();
 
-        this.blockPropertiesCache = Caffeine.newBuilder()
-                .executor(BlueMap.THREAD_POOL)
-                .maximumSize(10000)
-                .build(this::loadBlockProperties);
+        this.blockStateResources = new BlockStateArray<>(this::loadBlockState);
+        this.blockStateVariants = new BlockStateArray<>(this::loadVariantSets);
+        this.blockProperties = new BlockStateArray<>(this::loadBlockProperties);
     }
 
     @Nullable
@@ -108,6 +112,11 @@ public ResourcePath<BlockState> getBlockStatePath(String formatted) {
 
     @Nullable
     public BlockState getBlockState(de.bluecolored.bluemap.core.world.BlockState blockState) {
+        return blockStateResources.get(blockState);
+    }
+
+    @Nullable
+    private BlockState loadBlockState(de.bluecolored.bluemap.core.world.BlockState blockState) {
         ResourcePath<BlockState> path = blockStatePaths.get(blockState.getFormatted());
         return path != null ? path.getResource(this::getBlockState) : MISSING_BLOCK_STATE.getResource(this::getBlockState);
     }
@@ -160,23 +169,41 @@ public Biome getBiome(String formatted) {
         return biomeConfig.getBiome(formatted);
     }
 
+    public Biome getBiome(int biomeId) {
+        return biomeConfig.getBiome(biomeId);
+    }
+
+    /**
+     * Returns all {@link VariantSet}s of the block-state-resource that are matching the given block-state
+     * (an empty array if there is no block-state-resource for it)
+     */
+    public VariantSet[] getVariantSets(de.bluecolored.bluemap.core.world.BlockState state) {
+        return blockStateVariants.get(state);
+    }
+
+    private VariantSet[] loadVariantSets(de.bluecolored.bluemap.core.world.BlockState state) {
+        BlockState resource = getBlockState(state);
+        if (resource == null) return NO_VARIANT_SETS;
+        return resource.getVariantSets(state);
+    }
+
     public BlockProperties getBlockProperties(de.bluecolored.bluemap.core.world.BlockState state) {
-        return blockPropertiesCache.get(state);
+        return blockProperties.get(state);
     }
 
     private BlockProperties loadBlockProperties(de.bluecolored.bluemap.core.world.BlockState state) {
         BlockProperties.Builder props = blockPropertiesConfig.getBlockProperties(state).toBuilder();
 
         if (props.isOccluding() == Tristate.UNDEFINED || props.isCulling() == Tristate.UNDEFINED) {
-            BlockState resource = getBlockState(state);
-            if (resource != null) {
-                resource.forEach(state,0, 0, 0, variant -> {
-                    BlockModel model = variant.getModel().getResource(this::getBlockModel);
-                    if (model != null) {
-                        if (props.isOccluding() == Tristate.UNDEFINED) props.occluding(model.isOccluding());
-                        if (props.isCulling() == Tristate.UNDEFINED) props.culling(model.isCulling());
-                    }
-                });
+            for (VariantSet variantSet : getVariantSets(state)) {
+                Variant variant = variantSet.getVariant(0, 0, 0);
+                if (variant == null) continue;
+
+                BlockModel model = variant.getModel().getResource(this::getBlockModel);
+                if (model != null) {
+                    if (props.isOccluding() == Tristate.UNDEFINED) props.occluding(model.isOccluding());
+                    if (props.isCulling() == Tristate.UNDEFINED) props.culling(model.isCulling());
+                }
             }
         }
 
@@ -200,6 +227,10 @@ public synchronized void loadResources(Iterable<Path> roots) throws IOException
         Logger.global.logInfo("Baking resources...");
         bake();
 
+        // forget everything that has been resolved before the resources were loaded
+        blockStateResources.clear();
+        blockStateVariants.clear();
+        blockProperties.clear();
 
         Logger.global.logInfo("Resources loaded.");
     }
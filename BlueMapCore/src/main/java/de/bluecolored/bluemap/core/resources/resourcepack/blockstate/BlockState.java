@@ -27,6 +27,8 @@
 import de.bluecolored.bluemap.api.debug.DebugDump;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 @SuppressWarnings("FieldMayBeFinal")
@@ -53,4 +55,21 @@ public void forEach(de.bluecolored.bluemap.core.world.BlockState blockState, int
         if (multipart != null) multipart.forEach(blockState, x, y, z, consumer);
     }
 
+    /**
+     * Returns all {@link VariantSet}s whose conditions match the block-state.<br>
+     * Only the weighted random selection of a {@link Variant} out of each set depends on the position of a block,
+     * so the result can be reused for all blocks with the same block-state.
+     */
+    public VariantSet[] getVariantSets(de.bluecolored.bluemap.core.world.BlockState blockState) {
+        List<VariantSet> variantSets = new ArrayList<>();
+
+        if (variants != null) {
+            VariantSet variantSet = variants.getVariantSet(blockState);
+            if (variantSet != null) variantSets.add(variantSet);
+        }
+        if (multipart != null) multipart.forEachPart(blockState, variantSets::add);
+
+        return variantSets.toArray(VariantSet[]::new);
+    }
+
 }
@@ -59,6 +59,17 @@ public void forEach(BlockState blockState, int x, int y, int z, Consumer<Variant
         }
     }
 
+    /**
+     * Adds all parts that are matching the block-state to the consumer
+     */
+    public void forEachPart(BlockState blockState, Consumer<VariantSet> consumer) {
+        for (VariantSet part : parts) {
+            if (part.getCondition().matches(blockState)) {
+                consumer.accept(part);
+            }
+        }
+    }
+
     static class Adapter extends AbstractTypeAdapterFactory<Multipart> {
 
         public Adapter() {
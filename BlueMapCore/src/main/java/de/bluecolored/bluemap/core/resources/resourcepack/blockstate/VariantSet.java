@@ -30,6 +30,7 @@
 import com.google.gson.stream.JsonToken;
 import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.core.resources.AbstractTypeAdapterFactory;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -75,14 +76,21 @@ private double summarizeWeights() {
     }
 
     public void forEach(int x, int y, int z, Consumer<Variant> consumer) {
+        Variant variant = getVariant(x, y, z);
+        if (variant != null) consumer.accept(variant);
+    }
+
+    /**
+     * Returns the (weighted random, based on the position) variant of this set for the block at the given position
+     */
+    @Nullable
+    public Variant getVariant(int x, int y, int z) {
         double selection = hashToFloat(x, y, z) * totalWeight; // random based on position
         for (Variant variant : variants) {
             selection -= variant.getWeight();
-            if (selection <= 0) {
-                consumer.accept(variant);
-                return;
-            }
+            if (selection <= 0) return variant;
         }
+        return null;
     }
 
     private static float hashToFloat(int x, int y, int z) {
@@ -59,17 +59,23 @@ public VariantSet getDefaultVariant() {
     }
 
     public void forEach(BlockState blockState, int x, int y, int z, Consumer<Variant> consumer) {
+        VariantSet variant = getVariantSet(blockState);
+        if (variant != null) variant.forEach(x, y, z, consumer);
+    }
+
+    /**
+     * Returns the first {@link VariantSet} matching the block-state, or the default-variant if none matches
+     */
+    @Nullable
+    public VariantSet getVariantSet(BlockState blockState) {
         for (VariantSet variant : variants){
             if (variant.getCondition().matches(blockState)){
-                variant.forEach(x, y, z, consumer);
-                return;
+                return variant;
             }
         }
 
         // still here? do default
-        if (defaultVariant != null) {
-            defaultVariant.forEach(x, y, z, consumer);
-        }
+        return defaultVariant;
     }
 
     static class Adapter extends AbstractTypeAdapterFactory<Variants> {
@@ -0,0 +1,86 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns a small, dense and stable (for the runtime of the application) integer id to each biome-key.<br>
+ * Chunks can use these ids to store their biomes instead of keeping their own copies of the biome-key strings.
+ */
+public class BiomeIds {
+
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static volatile String[] keys = new String[64];
+    private static int nextId = 0;
+
+    /**
+     * The id of {@link Biome#DEFAULT}
+     */
+    public static final int DEFAULT = idFor(Biome.DEFAULT.getFormatted());
+
+    private BiomeIds() {}
+
+    /**
+     * Returns the id for the given biome-key, assigning a new one if this key has not been seen before
+     */
+    public static int idFor(String key) {
+        Integer id = IDS.get(key);
+        if (id != null) return id;
+
+        return register(key);
+    }
+
+    private static synchronized int register(String key) {
+        Integer id = IDS.get(key);
+        if (id != null) return id;
+
+        int newId = nextId++;
+        String[] keys = BiomeIds.keys;
+        if (newId >= keys.length) keys = Arrays.copyOf(keys, keys.length * 2);
+        keys[newId] = key;
+        BiomeIds.keys = keys;
+
+        IDS.put(key, newId);
+        return newId;
+    }
+
+    /**
+     * Returns the biome-key for the given id.
+     */
+    public static String keyFor(int id) {
+        return keys[id];
+    }
+
+    /**
+     * Returns the amount of ids that have been assigned so far
+     */
+    public static synchronized int size() {
+        return nextId;
+    }
+
+}
@@ -33,7 +33,7 @@
 
     private BlockState blockState;
     private final LightData lightData = new LightData(-1, -1);
-    private String biomeId;
+    private int biomeId;
 
     public Block(World world, int x, int y, int z) {
         set(world, x, y, z);
@@ -75,7 +75,7 @@ public T set(int x, int y, int z) {
     protected void reset() {
         this.blockState = null;
         this.lightData.set(-1, -1);
-        this.biomeId = null;
+        this.biomeId = -1;
     }
 
     public T add(int dx, int dy, int dz) {
@@ -146,7 +146,14 @@ public LightData getLightData() {
     }
 
     public String getBiomeId() {
-        if (biomeId == null) biomeId = getChunk().getBiome(x, y, z);
+        return BiomeIds.keyFor(getBiomeNumericId());
+    }
+
+    /**
+     * Returns the numeric {@link BiomeIds id} of the biome of this block
+     */
+    public int getBiomeNumericId() {
+        if (biomeId < 0) biomeId = getChunk().getBiomeId(x, y, z);
         return biomeId;
     }
 
@@ -30,6 +30,7 @@
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,12 +45,17 @@ public class BlockState extends Key {
 
     private static final Pattern BLOCKSTATE_SERIALIZATION_PATTERN = Pattern.compile("^(.+?)(?:\\[(.*)])?$");
 
-    public static final BlockState AIR = new BlockState("minecraft:air");
-    public static final BlockState MISSING = new BlockState("bluemap:missing");
+    private static final Map<BlockState, BlockState> INTERNED = new ConcurrentHashMap<>();
+    private static int nextId = 0;
+
+    public static final BlockState AIR = new BlockState("minecraft:air").intern();
+    public static final BlockState MISSING = new BlockState("bluemap:missing").intern();
 
     private boolean hashed;
     private int hash;
 
+    private int id = -1;
+
     private final Map<String, String> properties;
     private final Property[] propertiesArray;
 
@@ -137,6 +143,44 @@ public int getRedstonePower() {
         return redstonePower;
     }
 
+    /**
+     * Returns the canonical instance of this block-state.<br>
+     * For any two block-states <code>a</code> and <code>b</code>, <code>a.intern() == b.intern()</code> is
+     * <code>true</code> if and only if <code>a.equals(b)</code> is <code>true</code>.<br>
+     * <br>
+     * Interned block-states are already hashed and compare equal by identity, which makes them cheap to use as keys
+     * in the various block-state caches.
+     */
+    public BlockState intern() {
+        BlockState interned = INTERNED.get(this);
+        if (interned != null) return interned;
+
+        return register(this);
+    }
+
+    private static synchronized BlockState register(BlockState blockState) {
+        BlockState interned = INTERNED.get(blockState);
+        if (interned != null) return interned;
+
+        blockState.id = nextId++;
+        INTERNED.put(blockState, blockState);
+        return blockState;
+    }
+
+    /**
+     * Returns a small and dense id for this block-state, that is unique for the runtime of the application.<br>
+     * Equal block-states always have the same id, so it can be used as an index into arrays that map block-states
+     * to other values (see {@link BlockStateArray}).
+     */
+    public int getId() {
+        int id = this.id;
+        if (id < 0) {
+            id = intern().id;
+            this.id = id;
+        }
+        return id;
+    }
+
     @SuppressWarnings("StringEquality")
     @Override
     public boolean equals(Object obj) {
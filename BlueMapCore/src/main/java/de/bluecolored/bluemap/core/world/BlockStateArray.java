@@ -0,0 +1,89 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Maps block-states to lazily loaded values, using the {@link BlockState#getId() id} of the block-states as index
+ * into an array.<br>
+ * This makes a lookup a single array-access instead of hashing and comparing the block-state.<br>
+ * <br>
+ * <i>Loaded values of <code>null</code> are not stored and will be loaded again on the next lookup.</i>
+ */
+public class BlockStateArray<T> {
+
+    private static final int INITIAL_SIZE = 1024;
+
+    private final Function<BlockState, T> loader;
+    private volatile AtomicReferenceArray<T> values;
+
+    public BlockStateArray(Function<BlockState, T> loader) {
+        this.loader = loader;
+        this.values = new AtomicReferenceArray<>(INITIAL_SIZE);
+    }
+
+    public T get(BlockState blockState) {
+        int id = blockState.getId();
+
+        AtomicReferenceArray<T> values = this.values;
+        if (id < values.length()) {
+            T value = values.get(id);
+            if (value != null) return value;
+        }
+
+        T value = loader.apply(blockState);
+        if (value != null) set(id, value);
+        return value;
+    }
+
+    /**
+     * Removes all loaded values
+     */
+    public synchronized void clear() {
+        this.values = new AtomicReferenceArray<>(INITIAL_SIZE);
+    }
+
+    private synchronized void set(int id, T value) {
+        AtomicReferenceArray<T> values = this.values;
+
+        if (id >= values.length()) {
+            int length = values.length();
+            while (length <= id) length *= 2;
+
+            AtomicReferenceArray<T> grown = new AtomicReferenceArray<>(length);
+            for (int i = 0; i < values.length(); i++) {
+                grown.set(i, values.get(i));
+            }
+
+            this.values = grown;
+            values = grown;
+        }
+
+        values.set(id, value);
+    }
+
+}
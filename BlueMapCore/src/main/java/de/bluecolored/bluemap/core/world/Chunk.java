@@ -31,6 +31,15 @@ public interface Chunk {
     long getInhabitedTime();
 
     BlockState getBlockState(int x, int y, int z);
+
+    /**
+     * Returns the {@link BlockState} that <b>all</b> blocks of the 16x16x16 section at the given section-y have,
+     * or <code>null</code> if the section contains different block-states (or if this is not known).<br>
+     * Sections that don't exist in this chunk are treated like sections that contain only air.
+     */
+    default BlockState getUniformSectionState(int sectionY) {
+        return null;
+    }
     
     default int fromBlocksArray(int x, int y, int z) {
     	return 0;
@@ -38,7 +47,17 @@ default int fromBlocksArray(int x, int y, int z) {
 
     LightData getLightData(int x, int y, int z, LightData target);
 
-    String getBiome(int x, int y, int z);
+    /**
+     * Returns the {@link BiomeIds id} of the biome at the given position
+     */
+    int getBiomeId(int x, int y, int z);
+
+    /**
+     * Returns the key of the biome at the given position
+     */
+    default String getBiome(int x, int y, int z) {
+        return BiomeIds.keyFor(getBiomeId(x, y, z));
+    }
 
     int getMaxY(int x, int z);
 
@@ -48,4 +67,11 @@ default int fromBlocksArray(int x, int y, int z) {
 
     int getOceanFloorY(int x, int z);
 
+    /**
+     * Returns an estimate of the amount of memory in bytes that the data of this chunk is using.<br>
+     * This is only estimated once when the chunk is cached (see {@link ChunkCache}), so data that is only decoded
+     * when it is accessed should already be estimated with its decoded size.
+     */
+    int estimateMemorySize();
+
 }
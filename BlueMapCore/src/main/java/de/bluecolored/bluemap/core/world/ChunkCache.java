@@ -0,0 +1,335 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import com.flowpowered.math.vector.Vector2i;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache for loaded {@link Chunk}s that is limited by the (estimated) amount of memory the cached chunks are using,
+ * instead of the amount of chunks.<br>
+ * Chunks are identified by their chunk-coordinates packed into a single <code>long</code> (see {@link #key(int, int)}).<br>
+ * <br>
+ * In front of the (boxing) cache sits a small direct-mapped array of recently used chunks, so that looking up a chunk that
+ * is used again and again while rendering does not allocate anything.<br>
+ * <br>
+ * The memory of a chunk is only estimated once when it is put into the cache (see {@link Chunk#estimateMemorySize()}).
+ * The recently used chunks might additionally keep a few chunks in memory that have just been evicted.<br>
+ * <br>
+ * <i>This class is thread-safe.</i>
+ */
+public class ChunkCache {
+
+    public static final long DEFAULT_MAX_MEMORY = 128L * 1024 * 1024; // 128 MiB
+
+    /**
+     * Estimated memory used by the cache for each entry, additionally to the chunk itself
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private static final int PRELOAD_BATCH_SIZE = 64;
+
+    /**
+     * The recently used chunks are stored in 2^RECENT_CHUNKS_BITS slots
+     */
+    private static final int RECENT_CHUNKS_BITS = 8;
+
+    private final long maxMemory;
+    private final ChunkLoader loader;
+    private final ChunkVersionProvider versionProvider;
+    private final ChunkLoadFailures loadFailures;
+    private final LoadingCache<Long, Chunk> cache;
+
+    private final AtomicReferenceArray<RecentChunk> recentChunks;
+    private final AtomicLong recentChunksModCount;
+    private final LongAdder recentChunksHits;
+
+    public ChunkCache(long maxMemory, ChunkLoader loader) {
+        this(maxMemory, loader, (x, z) -> -1);
+    }
+
+    /**
+     * @param versionProvider Provides the current version of a chunk (see {@link Region#getChunkVersion(int, int)}),
+     *                        which is recorded when the chunk fails to load
+     */
+    public ChunkCache(long maxMemory, ChunkLoader loader, ChunkVersionProvider versionProvider) {
+        this.maxMemory = maxMemory;
+        this.loader = loader;
+        this.versionProvider = versionProvider;
+        this.loadFailures = new ChunkLoadFailures();
+        this.cache = Caffeine.newBuilder()
+                .executor(BlueMap.THREAD_POOL)
+                .maximumWeight(maxMemory)
+                .weigher((Long key, Chunk chunk) -> (int) Math.min(Integer.MAX_VALUE, ENTRY_OVERHEAD + chunk.estimateMemorySize()))
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .removalListener(this::onChunkRemoved)
+                .recordStats()
+                .build(key -> loadChunk(keyX(key), keyZ(key)));
+
+        this.recentChunks = new AtomicReferenceArray<>(1 << RECENT_CHUNKS_BITS);
+        this.recentChunksModCount = new AtomicLong();
+        this.recentChunksHits = new LongAdder();
+    }
+
+    /**
+     * Returns the chunk at the specified chunk-position, loading it if it is not cached.<br>
+     * If the chunk failed to load (see {@link #getLoadFailures()}), an uncached {@link EmptyChunk} is returned.
+     */
+    public Chunk get(int x, int z) {
+        long key = key(x, z);
+        int slot = recentChunksSlot(key);
+
+        RecentChunk recent = recentChunks.get(slot);
+        if (recent != null && recent.key == key) {
+            recentChunksHits.increment();
+            return recent.chunk;
+        }
+
+        long modCount = recentChunksModCount.get();
+        Chunk chunk = cache.get(key);
+        if (chunk == null) return EmptyChunk.INSTANCE;
+
+        recent = new RecentChunk(key, chunk);
+        recentChunks.set(slot, recent);
+
+        // the chunk might have been invalidated while it was loaded, then it must not be remembered
+        if (recentChunksModCount.get() != modCount) recentChunks.compareAndSet(slot, recent, null);
+
+        return chunk;
+    }
+
+    /**
+     * Returns the chunk at the specified chunk-position or <code>null</code> if it is not cached
+     */
+    public Chunk getIfPresent(int x, int z) {
+        long key = key(x, z);
+
+        RecentChunk recent = recentChunks.get(recentChunksSlot(key));
+        if (recent != null && recent.key == key) return recent.chunk;
+
+        return cache.getIfPresent(key);
+    }
+
+    public void put(int x, int z, Chunk chunk) {
+        long key = key(x, z);
+        cache.put(key, chunk);
+        forgetRecentChunk(key);
+    }
+
+    /**
+     * Loads the given chunks (that are not already cached) from the region in batches and puts them into the cache.<br>
+     * Stops early once the preloaded chunks are using half of the available memory, since loading more would just evict
+     * the preloaded chunks again before they are used.
+     */
+    public void preload(Region region, Collection<Vector2i> chunks, boolean ignoreMissingLightData) throws IOException {
+        List<Vector2i> chunksToLoad = new ArrayList<>(chunks.size());
+        for (Vector2i chunk : chunks) {
+            if (getIfPresent(chunk.getX(), chunk.getY()) == null) chunksToLoad.add(chunk);
+        }
+
+        long memoryBudget = maxMemory / 2;
+        for (int i = 0; i < chunksToLoad.size() && memoryBudget > 0; i += PRELOAD_BATCH_SIZE) {
+            List<Vector2i> batch = chunksToLoad.subList(i, Math.min(i + PRELOAD_BATCH_SIZE, chunksToLoad.size()));
+            for (Map.Entry<Vector2i, Chunk> entry : region.loadChunks(batch, ignoreMissingLightData).entrySet()) {
+                put(entry.getKey().getX(), entry.getKey().getY(), entry.getValue());
+                loadFailures.recordSuccess(entry.getKey().getX(), entry.getKey().getY());
+                memoryBudget -= ENTRY_OVERHEAD + entry.getValue().estimateMemorySize();
+            }
+        }
+    }
+
+    /**
+     * Returns the tracker for chunks that failed to load.<br>
+     * Those chunks are not cached, and are only loaded again after their back-off time has passed.
+     */
+    public ChunkLoadFailures getLoadFailures() {
+        return loadFailures;
+    }
+
+    public void invalidate(int x, int z) {
+        long key = key(x, z);
+        cache.invalidate(key);
+        forgetRecentChunk(key);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+
+        recentChunksModCount.incrementAndGet();
+        for (int i = 0; i < recentChunks.length(); i++) {
+            recentChunks.set(i, null);
+        }
+    }
+
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    /**
+     * The maximum amount of memory in bytes that the cached chunks are allowed to use
+     */
+    @DebugDump
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * The estimated amount of memory in bytes that the currently cached chunks are using
+     */
+    @DebugDump
+    public long getUsedMemory() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+    }
+
+    @DebugDump
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    @DebugDump
+    public double getHitRate() {
+        CacheStats stats = cache.stats();
+        long recentHits = recentChunksHits.sum();
+        long requests = stats.requestCount() + recentHits;
+        return requests == 0 ? 1.0 : (double) (stats.hitCount() + recentHits) / requests;
+    }
+
+    /**
+     * The amount of lookups that have been answered by the recently used chunks (without asking the actual cache)
+     */
+    @DebugDump
+    public long getRecentChunksHitCount() {
+        return recentChunksHits.sum();
+    }
+
+    /**
+     * The average time in nanoseconds it took to load a chunk
+     */
+    @DebugDump
+    public double getAverageLoadTime() {
+        return cache.stats().averageLoadPenalty();
+    }
+
+    @DebugDump
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    private void forgetRecentChunk(long key) {
+        recentChunksModCount.incrementAndGet();
+
+        int slot = recentChunksSlot(key);
+        RecentChunk recent = recentChunks.get(slot);
+        if (recent != null && recent.key == key) recentChunks.compareAndSet(slot, recent, null);
+    }
+
+    private void onChunkRemoved(Long key, Chunk chunk, RemovalCause cause) {
+        if (key == null) return;
+
+        // only forget the exact removed chunk, the slot might already contain a newer one
+        int slot = recentChunksSlot(key);
+        RecentChunk recent = recentChunks.get(slot);
+        if (recent != null && recent.chunk == chunk) recentChunks.compareAndSet(slot, recent, null);
+    }
+
+    private static int recentChunksSlot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - RECENT_CHUNKS_BITS));
+    }
+
+    private Chunk loadChunk(int x, int z) {
+        if (!loadFailures.shouldLoad(x, z)) return null;
+
+        try {
+            Chunk chunk = loader.load(x, z);
+            loadFailures.recordSuccess(x, z);
+            return chunk;
+        } catch (IOException | RuntimeException ex) {
+            loadFailures.recordFailure(x, z, versionProvider.getChunkVersion(x, z), ex);
+            Logger.global.logDebug("Failed to load chunk (x:" + x + ", z:" + z + "): " + ex);
+            return null;
+        }
+    }
+
+    public static long key(int x, int z) {
+        return (long) x << 32 | z & 0xFFFFFFFFL;
+    }
+
+    public static int keyX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int keyZ(long key) {
+        return (int) key;
+    }
+
+    private static class RecentChunk {
+
+        private final long key;
+        private final Chunk chunk;
+
+        private RecentChunk(long key, Chunk chunk) {
+            this.key = key;
+            this.chunk = chunk;
+        }
+
+    }
+
+    @FunctionalInterface
+    public interface ChunkLoader {
+
+        Chunk load(int x, int z) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    public interface ChunkVersionProvider {
+
+        long getChunkVersion(int x, int z);
+
+    }
+
+}
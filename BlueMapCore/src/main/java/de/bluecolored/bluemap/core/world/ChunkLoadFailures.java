@@ -0,0 +1,194 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.debug.StateDumper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of chunks that failed to load.<br>
+ * <br>
+ * A chunk that failed to load will not be loaded again until its back-off time has passed (doubling with each attempt),
+ * so render-tasks can continue with other tiles instead of waiting for it.
+ * After {@link #MAX_ATTEMPTS} failed attempts the chunk is considered to be "bad" and will not be loaded again
+ * until it is {@link #reset(int, int)}, or until it changed (see {@link #resetIfChanged(int, int, Region)}).<br>
+ * <br>
+ * <i>This class is thread-safe.</i>
+ */
+@DebugDump
+public class ChunkLoadFailures {
+
+    public static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * The time in milliseconds to wait before the first retry
+     */
+    private static final long BASE_BACKOFF = 1000;
+
+    private final Map<Long, Failure> failures;
+    private final LongAdder failureCount;
+
+    public ChunkLoadFailures() {
+        this.failures = new ConcurrentHashMap<>();
+        this.failureCount = new LongAdder();
+
+        StateDumper.global().register(this);
+    }
+
+    /**
+     * Returns true if the chunk can be loaded now: It either did not fail to load yet,
+     * or it is not a bad chunk and its back-off time has passed.
+     */
+    public boolean shouldLoad(int x, int z) {
+        Failure failure = failures.get(ChunkCache.key(x, z));
+        if (failure == null) return true;
+        if (failure.attempts >= MAX_ATTEMPTS) return false;
+        return System.currentTimeMillis() >= failure.retryTime;
+    }
+
+    /**
+     * Records a failed attempt to load the chunk
+     * @param version The version of the chunk that failed to load (see {@link Region#getChunkVersion(int, int)})
+     */
+    public void recordFailure(int x, int z, long version, Exception exception) {
+        failureCount.increment();
+
+        long now = System.currentTimeMillis();
+        failures.compute(ChunkCache.key(x, z), (key, failure) -> {
+            int attempts = failure == null ? 1 : failure.attempts + 1;
+            long retryTime = now + (BASE_BACKOFF << Math.min(attempts - 1, 16));
+            return new Failure(attempts, retryTime, version, String.valueOf(exception));
+        });
+    }
+
+    public void recordSuccess(int x, int z) {
+        failures.remove(ChunkCache.key(x, z));
+    }
+
+    /**
+     * Returns true if the chunk failed to load, but will be retried
+     */
+    public boolean isPending(int x, int z) {
+        Failure failure = failures.get(ChunkCache.key(x, z));
+        return failure != null && failure.attempts < MAX_ATTEMPTS;
+    }
+
+    /**
+     * Returns true if the chunk failed to load {@link #MAX_ATTEMPTS} times and won't be retried
+     */
+    public boolean isBad(int x, int z) {
+        Failure failure = failures.get(ChunkCache.key(x, z));
+        return failure != null && failure.attempts >= MAX_ATTEMPTS;
+    }
+
+    /**
+     * Returns the time (in milliseconds) after which the chunk will be loaded again, or 0 if it did not fail to load
+     */
+    public long getRetryTime(int x, int z) {
+        Failure failure = failures.get(ChunkCache.key(x, z));
+        return failure == null ? 0 : failure.retryTime;
+    }
+
+    /**
+     * Forgets all failures of this chunk, so it will be loaded again (e.g. because it has been changed)
+     */
+    public void reset(int x, int z) {
+        failures.remove(ChunkCache.key(x, z));
+    }
+
+    /**
+     * Forgets all failures of this chunk if the chunk changed in the given region since it last failed to load,
+     * so it will be loaded again.<br>
+     * A chunk whose version can't be determined (see {@link Region#getChunkVersion(int, int)}) is only considered to have
+     * changed if its version could be determined when it failed to load, or the other way around.
+     */
+    public void resetIfChanged(int x, int z, Region region) {
+        long key = ChunkCache.key(x, z);
+        Failure failure = failures.get(key);
+        if (failure == null) return;
+
+        long version = region.getChunkVersion(x, z);
+        if (version != failure.version) failures.remove(key, failure);
+    }
+
+    public void resetAll() {
+        failures.clear();
+    }
+
+    /**
+     * The total amount of failed chunk-loads
+     */
+    @DebugDump
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    @DebugDump
+    public long getPendingCount() {
+        return failures.values().stream()
+                .filter(failure -> failure.attempts < MAX_ATTEMPTS)
+                .count();
+    }
+
+    @DebugDump
+    public long getBadChunkCount() {
+        return failures.values().stream()
+                .filter(failure -> failure.attempts >= MAX_ATTEMPTS)
+                .count();
+    }
+
+    @DebugDump
+    public List<String> getBadChunks() {
+        List<String> badChunks = new ArrayList<>();
+        failures.forEach((key, failure) -> {
+            if (failure.attempts < MAX_ATTEMPTS) return;
+            badChunks.add("x:" + ChunkCache.keyX(key) + ", z:" + ChunkCache.keyZ(key) + " (" + failure.lastError + ")");
+        });
+        return badChunks;
+    }
+
+    private static class Failure {
+
+        private final int attempts;
+        private final long retryTime;
+        private final long version;
+        private final String lastError;
+
+        private Failure(int attempts, long retryTime, long version, String lastError) {
+            this.attempts = attempts;
+            this.retryTime = retryTime;
+            this.version = version;
+            this.lastError = lastError;
+        }
+
+    }
+
+}
@@ -0,0 +1,662 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.map.WorldChangeIndex;
+import de.bluecolored.bluemap.core.util.FileHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An on-disk cache for already decoded chunks.<br>
+ * <br>
+ * The snapshots of all chunks of a region are packed into one file, starting with a table that holds the offset,
+ * length and source-version of each snapshot. The snapshots use a compact binary layout (defined by a {@link Codec})
+ * that can be read much faster than decompressing and parsing the original chunk-data again.
+ * A snapshot is only used as long as the version of its chunk (see {@link Region#getChunkVersion(int, int)}) did not
+ * change, and if it has been created with the same <code>ignoreMissingLightData</code> setting.<br>
+ * <br>
+ * New snapshots are appended to the file, it gets compacted once more than half of it is no longer used.<br>
+ * <br>
+ * Use {@link #wrap(Region)} to get a region that loads its chunks from the snapshots if possible and writes new
+ * snapshots for all chunks it has to load from the original region.<br>
+ * <br>
+ * <i>This class is thread-safe.</i>
+ */
+@DebugDump
+public class ChunkSnapshotStore {
+
+    private static final int MAGIC = 0x424D4353; // "BMCS"
+    private static final short FORMAT_VERSION = 2;
+
+    private static final byte TYPE_EMPTY = 0;
+    private static final byte TYPE_CHUNK = 1;
+
+    private static final byte FLAG_IGNORE_MISSING_LIGHT_DATA = 1;
+
+    private static final int CHUNK_COUNT = 32 * 32;
+
+    private static final int FILE_HEADER_SIZE = 4 + 2 + 1; // magic, format-version, codec-id
+    private static final int TABLE_ENTRY_SIZE = 8 + 4 + 8 + 1; // offset, length, version, flags
+    private static final int DATA_START = FILE_HEADER_SIZE + CHUNK_COUNT * TABLE_ENTRY_SIZE;
+    private static final int ENTRY_HEADER_SIZE = 4 + 4 + 8 + 1 + 1; // x, z, version, flags, type
+
+    /**
+     * Snapshots of at least this size are memory-mapped, smaller ones are just read into a buffer
+     */
+    private static final int MAP_THRESHOLD = 256 * 1024;
+
+    /**
+     * Snapshot-files are only compacted once they have at least this size
+     */
+    private static final long COMPACT_MIN_SIZE = 1024 * 1024;
+
+    public static final String FILE_SUFFIX = ".bmcs";
+
+    private final Path folder;
+    private final Codec codec;
+
+    private final Map<Vector2i, SnapshotFile> openFiles;
+    private final Set<Long> pendingWrites;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public ChunkSnapshotStore(Path folder, Codec codec) {
+        this.folder = folder;
+        this.codec = codec;
+
+        this.openFiles = new HashMap<>();
+        this.pendingWrites = ConcurrentHashMap.newKeySet();
+
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Returns a {@link Region} that loads chunks from this snapshot-store whenever possible, and otherwise loads them from
+     * the given region and stores a new snapshot of them.
+     */
+    public Region wrap(Region region) {
+        return new SnapshotRegion(region);
+    }
+
+    public Path getSnapshotFile(int regionX, int regionZ) {
+        return folder.resolve(regionX + "." + regionZ + FILE_SUFFIX);
+    }
+
+    @DebugDump
+    public Path getFolder() {
+        return folder;
+    }
+
+    @DebugDump
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @DebugDump
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @DebugDump
+    public int getOpenFileCount() {
+        synchronized (openFiles) {
+            return openFiles.size();
+        }
+    }
+
+    /**
+     * Opens the snapshot-file of the specified region (or returns the already open one) and
+     * adds a reference to it, which needs to be released with {@link #release(SnapshotFile)} again.
+     */
+    private SnapshotFile acquire(int regionX, int regionZ) throws IOException {
+        Vector2i regionPos = new Vector2i(regionX, regionZ);
+
+        synchronized (openFiles) {
+            SnapshotFile file = openFiles.get(regionPos);
+            if (file == null) {
+                file = new SnapshotFile(regionPos, getSnapshotFile(regionX, regionZ));
+                file.open();
+                openFiles.put(regionPos, file);
+            }
+
+            file.references++;
+            return file;
+        }
+    }
+
+    /**
+     * Adds another reference to an already acquired snapshot-file.<br>
+     * Returns <code>false</code> if the file has been closed in the meantime.
+     */
+    private boolean retain(SnapshotFile file) {
+        synchronized (openFiles) {
+            if (file.references <= 0) return false;
+            file.references++;
+            return true;
+        }
+    }
+
+    private void release(SnapshotFile file) {
+        synchronized (openFiles) {
+            if (--file.references > 0) return;
+
+            openFiles.remove(file.regionPos, file);
+            try {
+                file.close();
+            } catch (IOException ex) {
+                Logger.global.logDebug("Failed to close chunk-snapshot file " + file.file + ": " + ex);
+            }
+        }
+    }
+
+    private Chunk readOrCount(SnapshotFile file, int x, int z, long version, byte flags) {
+        Chunk chunk = null;
+        if (file != null && version != -1) {
+            try {
+                chunk = file.read(x, z, version, flags);
+            } catch (IOException | RuntimeException ex) {
+                Logger.global.logDebug("Failed to read chunk-snapshot for chunk (x:" + x + ", z:" + z + ") from " + file.file + ": " + ex);
+            }
+        }
+
+        if (chunk == null) misses.increment();
+        else hits.increment();
+        return chunk;
+    }
+
+    /**
+     * Writes a snapshot of the chunk asynchronously, unless a snapshot of this chunk is already being written
+     */
+    private void writeAsync(SnapshotFile file, int x, int z, long version, byte flags, Chunk chunk) {
+        if (file == null || version == -1) return;
+
+        long key = ChunkCache.key(x, z);
+        if (!pendingWrites.add(key)) return;
+
+        if (!retain(file)) {
+            pendingWrites.remove(key);
+            return;
+        }
+
+        try {
+            BlueMap.THREAD_POOL.execute(() -> {
+                try {
+                    file.write(x, z, version, flags, encode(x, z, version, flags, chunk));
+                } catch (IOException | RuntimeException ex) {
+                    Logger.global.logDebug("Failed to write chunk-snapshot for chunk (x:" + x + ", z:" + z + ") to " + file.file + ": " + ex);
+                } finally {
+                    release(file);
+                    pendingWrites.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            release(file);
+            pendingWrites.remove(key);
+        }
+    }
+
+    private byte[] encode(int x, int z, long version, byte flags, Chunk chunk) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(x);
+            out.writeInt(z);
+            out.writeLong(version);
+            out.writeByte(flags);
+
+            if (chunk == EmptyChunk.INSTANCE) {
+                out.writeByte(TYPE_EMPTY);
+            } else {
+                out.writeByte(TYPE_CHUNK);
+                codec.write(x, z, chunk, out);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte flags(boolean ignoreMissingLightData) {
+        return ignoreMissingLightData ? FLAG_IGNORE_MISSING_LIGHT_DATA : 0;
+    }
+
+    private static int chunkIndex(int chunkX, int chunkZ) {
+        return (chunkZ & 0x1F) << 5 | (chunkX & 0x1F);
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read == -1) break;
+            total += read;
+        }
+        return total;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Defines the binary layout of the chunk-data in a snapshot
+     */
+    public interface Codec {
+
+        /**
+         * An id that identifies the layout, snapshots written with a different codec will be ignored
+         */
+        byte getId();
+
+        void write(int chunkX, int chunkZ, Chunk chunk, DataOutputStream out) throws IOException;
+
+        Chunk read(int chunkX, int chunkZ, ByteBuffer buffer) throws IOException;
+
+    }
+
+    /**
+     * The snapshot-file of one region.<br>
+     * The table is kept in memory, reads only need the read-lock while appending new snapshots or compacting the file
+     * needs the write-lock.
+     */
+    private class SnapshotFile {
+
+        private final Vector2i regionPos;
+        private final Path file;
+        private final ReadWriteLock lock;
+
+        private final long[] offsets;
+        private final int[] lengths;
+        private final long[] versions;
+        private final byte[] flags;
+
+        private FileChannel channel;
+        private long end;
+        private long usedSize;
+
+        private int references; // guarded by openFiles
+
+        private SnapshotFile(Vector2i regionPos, Path file) {
+            this.regionPos = regionPos;
+            this.file = file;
+            this.lock = new ReentrantReadWriteLock();
+
+            this.offsets = new long[CHUNK_COUNT];
+            this.lengths = new int[CHUNK_COUNT];
+            this.versions = new long[CHUNK_COUNT];
+            this.flags = new byte[CHUNK_COUNT];
+        }
+
+        private void open() throws IOException {
+            FileHelper.createDirectories(file.getParent());
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+            try {
+                long size = channel.size();
+                if (!readTable(channel, size)) {
+                    // missing, outdated or broken file: start with an empty one
+                    Arrays.fill(offsets, 0);
+                    Arrays.fill(lengths, 0);
+                    Arrays.fill(versions, 0);
+                    Arrays.fill(flags, (byte) 0);
+
+                    channel.truncate(0);
+                    writeFully(channel, createHeader(), 0);
+                    size = DATA_START;
+                }
+
+                this.channel = channel;
+                this.end = size;
+                this.usedSize = 0;
+                for (int length : lengths) usedSize += length;
+            } catch (IOException | RuntimeException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+
+        private boolean readTable(FileChannel channel, long size) throws IOException {
+            if (size < DATA_START) return false;
+
+            ByteBuffer header = ByteBuffer.allocate(DATA_START);
+            if (readFully(channel, header, 0) < DATA_START) return false;
+            header.flip();
+
+            if (header.getInt() != MAGIC) return false;
+            if (header.getShort() != FORMAT_VERSION) return false;
+            if (header.get() != codec.getId()) return false;
+
+            for (int i = 0; i < CHUNK_COUNT; i++) {
+                offsets[i] = header.getLong();
+                lengths[i] = header.getInt();
+                versions[i] = header.getLong();
+                flags[i] = header.get();
+
+                // drop entries that are pointing outside of the file (e.g. if writing the data has been interrupted)
+                if (lengths[i] < ENTRY_HEADER_SIZE || offsets[i] < DATA_START || offsets[i] + lengths[i] > size) {
+                    offsets[i] = 0;
+                    lengths[i] = 0;
+                }
+            }
+
+            return true;
+        }
+
+        private ByteBuffer createHeader() {
+            ByteBuffer header = ByteBuffer.allocate(DATA_START);
+            header.putInt(MAGIC);
+            header.putShort(FORMAT_VERSION);
+            header.put(codec.getId());
+
+            for (int i = 0; i < CHUNK_COUNT; i++) {
+                header.putLong(offsets[i]);
+                header.putInt(lengths[i]);
+                header.putLong(versions[i]);
+                header.put(flags[i]);
+            }
+
+            header.flip();
+            return header;
+        }
+
+        /**
+         * Reads the snapshot of the specified chunk.<br>
+         * Returns <code>null</code> if there is no snapshot or if it has not been created from the given chunk-version
+         * and flags.
+         */
+        private Chunk read(int chunkX, int chunkZ, long version, byte flags) throws IOException {
+            int i = chunkIndex(chunkX, chunkZ);
+
+            lock.readLock().lock();
+            try {
+                if (channel == null) return null;
+
+                int length = lengths[i];
+                if (length == 0 || versions[i] != version || this.flags[i] != flags) return null;
+
+                ByteBuffer buffer;
+                if (length >= MAP_THRESHOLD) {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, offsets[i], length);
+                } else {
+                    buffer = ByteBuffer.allocate(length);
+                    if (readFully(channel, buffer, offsets[i]) < length) return null;
+                    buffer.flip();
+                }
+
+                // double-check the entry itself, so we never use a snapshot of a different chunk
+                if (buffer.getInt() != chunkX || buffer.getInt() != chunkZ) return null;
+                if (buffer.getLong() != version || buffer.get() != flags) return null;
+
+                byte type = buffer.get();
+                if (type == TYPE_EMPTY) return EmptyChunk.INSTANCE;
+                if (type != TYPE_CHUNK) return null;
+
+                return codec.read(chunkX, chunkZ, buffer);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Appends the (encoded) snapshot-entry to the file and points the table-entry of the chunk to it
+         */
+        private void write(int chunkX, int chunkZ, long version, byte flags, byte[] entry) throws IOException {
+            int i = chunkIndex(chunkX, chunkZ);
+
+            lock.writeLock().lock();
+            try {
+                if (channel == null) return;
+
+                long offset = end;
+                writeFully(channel, ByteBuffer.wrap(entry), offset);
+                end += entry.length;
+
+                ByteBuffer tableEntry = ByteBuffer.allocate(TABLE_ENTRY_SIZE);
+                tableEntry.putLong(offset);
+                tableEntry.putInt(entry.length);
+                tableEntry.putLong(version);
+                tableEntry.put(flags);
+                tableEntry.flip();
+                writeFully(channel, tableEntry, FILE_HEADER_SIZE + (long) i * TABLE_ENTRY_SIZE);
+
+                usedSize += entry.length - lengths[i];
+                offsets[i] = offset;
+                lengths[i] = entry.length;
+                versions[i] = version;
+                this.flags[i] = flags;
+
+                long dataSize = end - DATA_START;
+                if (dataSize >= COMPACT_MIN_SIZE && usedSize * 2 < dataSize) compact();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Rewrites the file with only the snapshots that are still referenced by the table.<br>
+         * Needs to be called while holding the write-lock.
+         */
+        private void compact() throws IOException {
+            Path partFile = file.resolveSibling(file.getFileName() + ".compact");
+
+            long[] newOffsets = new long[CHUNK_COUNT];
+            try (FileChannel out = FileChannel.open(partFile,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = DATA_START;
+                for (int i = 0; i < CHUNK_COUNT; i++) {
+                    if (lengths[i] == 0) continue;
+
+                    newOffsets[i] = position;
+                    long transferred = 0;
+                    while (transferred < lengths[i]) {
+                        long count = channel.transferTo(offsets[i] + transferred, lengths[i] - transferred, out.position(position + transferred));
+                        if (count <= 0) throw new IOException("Unexpected end of file: " + file);
+                        transferred += count;
+                    }
+                    position += lengths[i];
+                }
+
+                long[] oldOffsets = offsets.clone();
+                System.arraycopy(newOffsets, 0, offsets, 0, CHUNK_COUNT);
+                try {
+                    writeFully(out, createHeader(), 0);
+                } finally {
+                    System.arraycopy(oldOffsets, 0, offsets, 0, CHUNK_COUNT);
+                }
+            } catch (IOException | RuntimeException ex) {
+                Files.deleteIfExists(partFile);
+                throw ex;
+            }
+
+            channel.close();
+            channel = null;
+
+            try {
+                FileHelper.move(partFile, file);
+            } catch (IOException ex) {
+                // keep using the old (uncompacted) file
+                Files.deleteIfExists(partFile);
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                throw ex;
+            }
+
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            System.arraycopy(newOffsets, 0, offsets, 0, CHUNK_COUNT);
+            end = DATA_START + usedSize;
+        }
+
+        private void close() throws IOException {
+            lock.writeLock().lock();
+            try {
+                if (channel == null) return;
+                channel.close();
+                channel = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+    }
+
+    private class SnapshotRegion implements Region {
+
+        private final Region region;
+
+        private SnapshotFile file;
+        private boolean closed;
+
+        private SnapshotRegion(Region region) {
+            this.region = region;
+        }
+
+        /**
+         * Returns the snapshot-file of this region, or <code>null</code> if it can not be opened
+         * or this region has already been closed.
+         */
+        private synchronized SnapshotFile getFile(int chunkX, int chunkZ) {
+            if (closed) return null;
+
+            if (file == null) {
+                try {
+                    file = acquire(chunkX >> 5, chunkZ >> 5);
+                } catch (IOException ex) {
+                    Logger.global.logDebug("Failed to open chunk-snapshot file for region (x:" + (chunkX >> 5) + ", z:" + (chunkZ >> 5) + "): " + ex);
+                    return null;
+                }
+            }
+
+            return file;
+        }
+
+        @Override
+        public Collection<Vector2i> listChunks(long modifiedSince) {
+            return region.listChunks(modifiedSince);
+        }
+
+        @Override
+        public Chunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData) throws IOException {
+            SnapshotFile file = getFile(chunkX, chunkZ);
+            long version = file != null ? region.getChunkVersion(chunkX, chunkZ) : -1;
+            byte flags = flags(ignoreMissingLightData);
+
+            Chunk chunk = readOrCount(file, chunkX, chunkZ, version, flags);
+            if (chunk != null) return chunk;
+
+            chunk = region.loadChunk(chunkX, chunkZ, ignoreMissingLightData);
+            writeAsync(file, chunkX, chunkZ, version, flags, chunk);
+
+            return chunk;
+        }
+
+        @Override
+        public Map<Vector2i, Chunk> loadChunks(Collection<Vector2i> chunks, boolean ignoreMissingLightData) throws IOException {
+            if (chunks.isEmpty()) return new HashMap<>();
+
+            Vector2i first = chunks.iterator().next();
+            SnapshotFile file = getFile(first.getX(), first.getY());
+            byte flags = flags(ignoreMissingLightData);
+
+            Map<Vector2i, Chunk> loadedChunks = new HashMap<>();
+            Map<Vector2i, Long> missingChunks = new HashMap<>();
+            for (Vector2i pos : chunks) {
+                long version = file != null ? region.getChunkVersion(pos.getX(), pos.getY()) : -1;
+
+                Chunk chunk = readOrCount(file, pos.getX(), pos.getY(), version, flags);
+                if (chunk != null) loadedChunks.put(pos, chunk);
+                else missingChunks.put(pos, version);
+            }
+
+            if (missingChunks.isEmpty()) return loadedChunks;
+
+            List<Vector2i> missing = new ArrayList<>(missingChunks.keySet());
+            for (Map.Entry<Vector2i, Chunk> entry : region.loadChunks(missing, ignoreMissingLightData).entrySet()) {
+                Vector2i pos = entry.getKey();
+                loadedChunks.put(pos, entry.getValue());
+                writeAsync(file, pos.getX(), pos.getY(), missingChunks.getOrDefault(pos, -1L), flags, entry.getValue());
+            }
+
+            return loadedChunks;
+        }
+
+        @Override
+        public Path getRegionFile() {
+            return region.getRegionFile();
+        }
+
+        @Override
+        public WorldChangeIndex.RegionFileState getRegionFileState() {
+            return region.getRegionFileState();
+        }
+
+        @Override
+        public long getChunkVersion(int chunkX, int chunkZ) {
+            return region.getChunkVersion(chunkX, chunkZ);
+        }
+
+        /**
+         * Releases the snapshot-file and closes the wrapped region.<br>
+         * Chunks that are loaded after this are no longer read from or written to the snapshot-store.
+         */
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                closed = true;
+                if (file != null) {
+                    release(file);
+                    file = null;
+                }
+            }
+
+            region.close();
+        }
+
+    }
+
+}
@@ -43,14 +43,19 @@ public BlockState getBlockState(int x, int y, int z) {
         return BlockState.AIR;
     }
 
+    @Override
+    public BlockState getUniformSectionState(int sectionY) {
+        return BlockState.AIR;
+    }
+
     @Override
     public LightData getLightData(int x, int y, int z, LightData target) {
         return target.set(0, 0);
     }
 
     @Override
-    public String getBiome(int x, int y, int z) {
-        return Biome.DEFAULT.getFormatted();
+    public int getBiomeId(int x, int y, int z) {
+        return BiomeIds.DEFAULT;
     }
 
     @Override
@@ -69,4 +74,9 @@ public int getMinY(int x, int z) {
     @Override
     public int getOceanFloorY(int x, int z) { return 0; }
 
+    @Override
+    public int estimateMemorySize() {
+        return 0;
+    }
+
 }
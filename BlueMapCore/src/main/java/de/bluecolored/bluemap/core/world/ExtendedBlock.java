@@ -72,7 +72,7 @@ public BlockProperties getProperties() {
     }
 
     public Biome getBiome() {
-        if (biome == null) biome = resourcePack.getBiome(getBiomeId());
+        if (biome == null) biome = resourcePack.getBiome(getBiomeNumericId());
         return biome;
     }
 
@@ -25,10 +25,13 @@
 package de.bluecolored.bluemap.core.world;
 
 import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.map.WorldChangeIndex;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 public interface Region {
 
@@ -52,6 +55,45 @@ default Chunk loadChunk(int chunkX, int chunkZ) throws IOException {
 
     Chunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData) throws IOException;
 
+    /**
+     * Loads all specified chunks of this region at once.<br>
+     * Implementations can use this to read the chunks more efficiently than by loading them one by one.<br>
+     * Chunks that fail to load might be missing from the returned map.
+     */
+    default Map<Vector2i, Chunk> loadChunks(Collection<Vector2i> chunks, boolean ignoreMissingLightData) throws IOException {
+        Map<Vector2i, Chunk> loadedChunks = new HashMap<>();
+        for (Vector2i chunk : chunks) {
+            loadedChunks.put(chunk, loadChunk(chunk.getX(), chunk.getY(), ignoreMissingLightData));
+        }
+        return loadedChunks;
+    }
+
     Path getRegionFile();
 
+    /**
+     * Returns the current state (size and last-modification time) of the file(s) this region is loaded from,
+     * or <code>null</code> if it can not be read.<br>
+     * This is used to skip regions that did not change since they have last been rendered (see {@link WorldChangeIndex}).
+     */
+    default WorldChangeIndex.RegionFileState getRegionFileState() {
+        return WorldChangeIndex.RegionFileState.read(getRegionFile());
+    }
+
+    /**
+     * Returns a value that changes whenever the specified chunk changes, or <code>-1</code> if it can not be determined.<br>
+     * This is used to decide if a {@link ChunkSnapshotStore chunk-snapshot} is still up to date.<br>
+     * By default this is the last-modification time of the region-file, implementations should return a more
+     * fine-grained value if the chunk's own modification time is known.
+     */
+    default long getChunkVersion(int chunkX, int chunkZ) {
+        WorldChangeIndex.RegionFileState state = getRegionFileState();
+        return state != null ? state.getLastModified() : -1;
+    }
+
+    /**
+     * Releases all resources (like open file-handles) that this region might be holding.<br>
+     * The region can still be used afterwards, but will then need to re-acquire those resources.
+     */
+    default void close() throws IOException {}
+
 }
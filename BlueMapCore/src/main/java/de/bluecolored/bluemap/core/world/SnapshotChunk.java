@@ -0,0 +1,468 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link Chunk} that has been read from a {@link ChunkSnapshotStore}.<br>
+ * <br>
+ * The snapshot is created through the {@link Chunk}-interface of the original chunk (see {@link #CODEC}), so it works for
+ * all chunk-formats where the block-states of a chunk don't depend on its neighbours.
+ * Blocks are stored in 16x16x16 sections as a palette and bit-packed palette-indices, light as nibble-arrays,
+ * biomes as a palette with one entry per block-column and 4 blocks in height, and the heightmaps as int-arrays.
+ */
+public class SnapshotChunk implements Chunk {
+
+    public static final ChunkSnapshotStore.Codec CODEC = new SnapshotCodec();
+
+    private static final int BLOCKS_PER_SECTION = 16 * 16 * 16;
+    private static final int BIOMES_PER_SECTION = 16 * 16 * 4;
+    private static final int NIBBLES_BYTES = BLOCKS_PER_SECTION / 2;
+
+    private final boolean generated;
+    private final long inhabitedTime;
+
+    private final int[] minY, maxY, worldSurfaceY, oceanFloorY;
+
+    private final int sectionMin;
+    private final Section[] sections;
+
+    private final int belowSkyLight, belowBlockLight;
+    private final int aboveSkyLight, aboveBlockLight;
+
+    private SnapshotChunk(ByteBuffer buffer) throws IOException {
+        this.generated = buffer.get() != 0;
+        this.inhabitedTime = buffer.getLong();
+
+        this.minY = readInts(buffer, 256);
+        this.maxY = readInts(buffer, 256);
+        this.worldSurfaceY = readInts(buffer, 256);
+        this.oceanFloorY = readInts(buffer, 256);
+
+        this.belowSkyLight = buffer.get();
+        this.belowBlockLight = buffer.get();
+        this.aboveSkyLight = buffer.get();
+        this.aboveBlockLight = buffer.get();
+
+        this.sectionMin = buffer.getInt();
+        int sectionCount = buffer.getInt();
+        if (sectionCount < 0 || sectionCount > 4096) throw new IOException("Invalid section-count: " + sectionCount);
+
+        this.sections = new Section[sectionCount];
+        for (int i = 0; i < sectionCount; i++) {
+            this.sections[i] = new Section(buffer);
+        }
+    }
+
+    @Override
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    @Override
+    public long getInhabitedTime() {
+        return inhabitedTime;
+    }
+
+    @Override
+    public BlockState getBlockState(int x, int y, int z) {
+        Section section = getSection(y >> 4);
+        if (section == null) return BlockState.AIR;
+
+        return section.getBlockState(x, y, z);
+    }
+
+    @Override
+    public BlockState getUniformSectionState(int sectionY) {
+        Section section = getSection(sectionY);
+        if (section == null) return BlockState.AIR;
+
+        return section.getUniformBlockState();
+    }
+
+    @Override
+    public LightData getLightData(int x, int y, int z, LightData target) {
+        int sectionY = y >> 4;
+
+        Section section = getSection(sectionY);
+        if (section == null) {
+            if (sectionY < sectionMin) return target.set(belowSkyLight, belowBlockLight);
+            return target.set(aboveSkyLight, aboveBlockLight);
+        }
+
+        return section.getLightData(x, y, z, target);
+    }
+
+    @Override
+    public int getBiomeId(int x, int y, int z) {
+        Section section = getSection(y >> 4);
+        if (section == null) return BiomeIds.DEFAULT;
+
+        return section.getBiomeId(x, y, z);
+    }
+
+    @Override
+    public int getMaxY(int x, int z) {
+        return maxY[columnIndex(x, z)];
+    }
+
+    @Override
+    public int getMinY(int x, int z) {
+        return minY[columnIndex(x, z)];
+    }
+
+    @Override
+    public int getWorldSurfaceY(int x, int z) {
+        return worldSurfaceY[columnIndex(x, z)];
+    }
+
+    @Override
+    public int getOceanFloorY(int x, int z) {
+        return oceanFloorY[columnIndex(x, z)];
+    }
+
+    @Override
+    public int estimateMemorySize() {
+        int size = 64 + 4 * (16 + 256 * 4);
+        for (Section section : sections) {
+            size += section.estimateMemorySize();
+        }
+        return size;
+    }
+
+    private Section getSection(int y) {
+        y -= sectionMin;
+        if (y < 0 || y >= this.sections.length) return null;
+        return this.sections[y];
+    }
+
+    private static int columnIndex(int x, int z) {
+        return (z & 0xF) << 4 | (x & 0xF);
+    }
+
+    private static class Section {
+
+        private final BlockState[] blockPalette;
+        private final int blockBits;
+        private final long[] blocks;
+
+        private final byte[] skyLight, blockLight;
+        private final int uniformSkyLight, uniformBlockLight;
+
+        private final int[] biomePalette;
+        private final int biomeBits;
+        private final long[] biomes;
+
+        private Section(ByteBuffer buffer) throws IOException {
+            int blockPaletteSize = buffer.getInt();
+            if (blockPaletteSize <= 0 || blockPaletteSize > BLOCKS_PER_SECTION)
+                throw new IOException("Invalid block-palette size: " + blockPaletteSize);
+
+            this.blockPalette = new BlockState[blockPaletteSize];
+            for (int i = 0; i < blockPaletteSize; i++) {
+                String id = readString(buffer);
+                int propertyCount = buffer.get() & 0xFF;
+
+                Map<String, String> properties = new HashMap<>(propertyCount);
+                for (int p = 0; p < propertyCount; p++) {
+                    properties.put(readString(buffer), readString(buffer));
+                }
+
+                this.blockPalette[i] = new BlockState(id, properties).intern();
+            }
+            this.blockBits = bitsFor(blockPaletteSize);
+            this.blocks = readLongs(buffer, packedLength(BLOCKS_PER_SECTION, blockBits));
+
+            this.uniformSkyLight = buffer.get();
+            this.skyLight = uniformSkyLight < 0 ? readBytes(buffer, NIBBLES_BYTES) : null;
+            this.uniformBlockLight = buffer.get();
+            this.blockLight = uniformBlockLight < 0 ? readBytes(buffer, NIBBLES_BYTES) : null;
+
+            int biomePaletteSize = buffer.getInt();
+            if (biomePaletteSize <= 0 || biomePaletteSize > BIOMES_PER_SECTION)
+                throw new IOException("Invalid biome-palette size: " + biomePaletteSize);
+
+            this.biomePalette = new int[biomePaletteSize];
+            for (int i = 0; i < biomePaletteSize; i++) {
+                this.biomePalette[i] = BiomeIds.idFor(readString(buffer));
+            }
+            this.biomeBits = bitsFor(biomePaletteSize);
+            this.biomes = readLongs(buffer, packedLength(BIOMES_PER_SECTION, biomeBits));
+        }
+
+        public BlockState getUniformBlockState() {
+            return blockBits == 0 ? blockPalette[0] : null;
+        }
+
+        public BlockState getBlockState(int x, int y, int z) {
+            if (blockBits == 0) return blockPalette[0];
+            return blockPalette[getPacked(blocks, blockIndex(x, y, z), blockBits)];
+        }
+
+        public LightData getLightData(int x, int y, int z, LightData target) {
+            int index = blockIndex(x, y, z);
+            return target.set(
+                    skyLight == null ? uniformSkyLight : getNibble(skyLight, index),
+                    blockLight == null ? uniformBlockLight : getNibble(blockLight, index)
+            );
+        }
+
+        public int getBiomeId(int x, int y, int z) {
+            if (biomeBits == 0) return biomePalette[0];
+            return biomePalette[getPacked(biomes, biomeIndex(x, y, z), biomeBits)];
+        }
+
+        public int estimateMemorySize() {
+            int size = 128 + blockPalette.length * 8 + biomePalette.length * 4;
+            size += blocks.length * 8 + biomes.length * 8;
+            if (skyLight != null) size += skyLight.length;
+            if (blockLight != null) size += blockLight.length;
+            return size;
+        }
+
+    }
+
+    private static class SnapshotCodec implements ChunkSnapshotStore.Codec {
+
+        @Override
+        public byte getId() {
+            return 1;
+        }
+
+        @Override
+        public void write(int chunkX, int chunkZ, Chunk chunk, DataOutputStream out) throws IOException {
+            int bx = chunkX << 4, bz = chunkZ << 4;
+
+            int[] minY = new int[256], maxY = new int[256], worldSurfaceY = new int[256], oceanFloorY = new int[256];
+            int minBlockY = Integer.MAX_VALUE, maxBlockY = Integer.MIN_VALUE;
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    int i = columnIndex(x, z);
+                    minY[i] = chunk.getMinY(bx + x, bz + z);
+                    maxY[i] = chunk.getMaxY(bx + x, bz + z);
+                    worldSurfaceY[i] = chunk.getWorldSurfaceY(bx + x, bz + z);
+                    oceanFloorY[i] = chunk.getOceanFloorY(bx + x, bz + z);
+
+                    minBlockY = Math.min(minBlockY, minY[i]);
+                    maxBlockY = Math.max(maxBlockY, maxY[i]);
+                }
+            }
+
+            out.writeBoolean(chunk.isGenerated());
+            out.writeLong(chunk.getInhabitedTime());
+
+            writeInts(out, minY);
+            writeInts(out, maxY);
+            writeInts(out, worldSurfaceY);
+            writeInts(out, oceanFloorY);
+
+            LightData light = new LightData(0, 0);
+            chunk.getLightData(bx, minBlockY - 1, bz, light);
+            out.writeByte(light.getSkyLight());
+            out.writeByte(light.getBlockLight());
+            chunk.getLightData(bx, maxBlockY + 1, bz, light);
+            out.writeByte(light.getSkyLight());
+            out.writeByte(light.getBlockLight());
+
+            int sectionMin = Math.floorDiv(minBlockY, 16);
+            int sectionMax = Math.floorDiv(maxBlockY, 16);
+            out.writeInt(sectionMin);
+            out.writeInt(sectionMax - sectionMin + 1);
+
+            int[] indices = new int[BLOCKS_PER_SECTION];
+            byte[] skyLight = new byte[NIBBLES_BYTES], blockLight = new byte[NIBBLES_BYTES];
+            for (int sectionY = sectionMin; sectionY <= sectionMax; sectionY++) {
+                int by = sectionY << 4;
+
+                // blocks and light
+                Map<BlockState, Integer> blockPalette = new LinkedHashMap<>();
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        for (int x = 0; x < 16; x++) {
+                            int i = blockIndex(x, y, z);
+                            BlockState blockState = chunk.getBlockState(bx + x, by + y, bz + z);
+                            indices[i] = blockPalette.computeIfAbsent(blockState, k -> blockPalette.size());
+
+                            chunk.getLightData(bx + x, by + y, bz + z, light);
+                            setNibble(skyLight, i, light.getSkyLight());
+                            setNibble(blockLight, i, light.getBlockLight());
+                        }
+                    }
+                }
+
+                out.writeInt(blockPalette.size());
+                for (BlockState blockState : blockPalette.keySet()) {
+                    writeString(out, blockState.getFormatted());
+                    out.writeByte(blockState.getProperties().size());
+                    for (Map.Entry<String, String> property : blockState.getProperties().entrySet()) {
+                        writeString(out, property.getKey());
+                        writeString(out, property.getValue());
+                    }
+                }
+                writeLongs(out, pack(indices, BLOCKS_PER_SECTION, bitsFor(blockPalette.size())));
+
+                writeNibbles(out, skyLight);
+                writeNibbles(out, blockLight);
+
+                // biomes
+                Map<String, Integer> biomePalette = new LinkedHashMap<>();
+                for (int y = 0; y < 16; y += 4) {
+                    for (int z = 0; z < 16; z++) {
+                        for (int x = 0; x < 16; x++) {
+                            String biome = chunk.getBiome(bx + x, by + y, bz + z);
+                            indices[biomeIndex(x, y, z)] = biomePalette.computeIfAbsent(biome, k -> biomePalette.size());
+                        }
+                    }
+                }
+
+                out.writeInt(biomePalette.size());
+                for (String biome : biomePalette.keySet()) {
+                    writeString(out, biome);
+                }
+                writeLongs(out, pack(indices, BIOMES_PER_SECTION, bitsFor(biomePalette.size())));
+            }
+        }
+
+        @Override
+        public Chunk read(int chunkX, int chunkZ, ByteBuffer buffer) throws IOException {
+            return new SnapshotChunk(buffer);
+        }
+
+    }
+
+    private static int blockIndex(int x, int y, int z) {
+        return (y & 0xF) << 8 | (z & 0xF) << 4 | (x & 0xF);
+    }
+
+    private static int biomeIndex(int x, int y, int z) {
+        return ((y & 0xF) >> 2) << 8 | (z & 0xF) << 4 | (x & 0xF);
+    }
+
+    /**
+     * The amount of bits needed to store the indices of a palette with the given size
+     */
+    private static int bitsFor(int paletteSize) {
+        if (paletteSize <= 1) return 0;
+        return 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+    }
+
+    private static int packedLength(int count, int bits) {
+        if (bits == 0) return 0;
+        int valuesPerLong = 64 / bits;
+        return (count + valuesPerLong - 1) / valuesPerLong;
+    }
+
+    private static long[] pack(int[] values, int count, int bits) {
+        long[] packed = new long[packedLength(count, bits)];
+        if (bits == 0) return packed;
+
+        int valuesPerLong = 64 / bits;
+        for (int i = 0; i < count; i++) {
+            packed[i / valuesPerLong] |= (long) values[i] << ((i % valuesPerLong) * bits);
+        }
+        return packed;
+    }
+
+    private static int getPacked(long[] packed, int index, int bits) {
+        int valuesPerLong = 64 / bits;
+        return (int) (packed[index / valuesPerLong] >>> ((index % valuesPerLong) * bits) & ((1L << bits) - 1));
+    }
+
+    private static int getNibble(byte[] nibbles, int index) {
+        int value = nibbles[index >> 1];
+        return (index & 1) == 0 ? value & 0xF : value >> 4 & 0xF;
+    }
+
+    private static void setNibble(byte[] nibbles, int index, int value) {
+        int i = index >> 1;
+        if ((index & 1) == 0) nibbles[i] = (byte) (nibbles[i] & 0xF0 | value & 0xF);
+        else nibbles[i] = (byte) (nibbles[i] & 0x0F | (value & 0xF) << 4);
+    }
+
+    /**
+     * Writes the nibbles either as a single value (if all nibbles are the same), or as -1 followed by all nibbles
+     */
+    private static void writeNibbles(DataOutputStream out, byte[] nibbles) throws IOException {
+        byte first = nibbles[0];
+        boolean uniform = (first & 0xF) == (first >> 4 & 0xF);
+        for (int i = 1; uniform && i < nibbles.length; i++) {
+            if (nibbles[i] != first) uniform = false;
+        }
+
+        if (uniform) {
+            out.writeByte(first & 0xF);
+        } else {
+            out.writeByte(-1);
+            out.write(nibbles);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = readBytes(buffer, buffer.getShort() & 0xFFFF);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) out.writeInt(value);
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        for (long value : values) out.writeLong(value);
+    }
+
+    private static long[] readLongs(ByteBuffer buffer, int count) {
+        long[] values = new long[count];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + count * 8);
+        return values;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int count) {
+        byte[] bytes = new byte[count];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+}
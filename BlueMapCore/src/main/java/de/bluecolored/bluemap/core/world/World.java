@@ -26,6 +26,7 @@
 
 import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector3i;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
 import java.util.Collection;
@@ -69,12 +70,48 @@ public interface World {
      */
     Region getRegion(int x, int z);
 
+    /**
+     * Returns a value that changes whenever the chunk on the specified chunk-position changes,
+     * or <code>-1</code> if it can not be determined (see {@link Region#getChunkVersion(int, int)})
+     */
+    default long getChunkVersion(int x, int z) {
+        return getRegion(x >> 5, z >> 5).getChunkVersion(x, z);
+    }
+
     /**
      * Returns a collection of all regions in this world.
      * <i>(Be aware that the collection is not cached and recollected each time from the world-files!)</i>
      */
     Collection<Vector2i> listRegions();
 
+    /**
+     * Returns the folder containing all files that the regions of this world are loaded from.<br>
+     * <i>(This might also contain sub-folders, e.g. for alpha-worlds)</i>
+     */
+    Path getRegionFolder();
+
+    /**
+     * Returns the position of the region that the given file (inside the region-folder) belongs to,
+     * or <code>null</code> if the file is not a region- or chunk-file of this world.
+     */
+    @Nullable Vector2i getRegionPosition(Path file);
+
+    /**
+     * Returns true if the given sub-folder of the {@link #getRegionFolder() region-folder} can contain region- or chunk-files
+     * of this world (e.g. the chunk-folders of alpha-worlds).<br>
+     * All other sub-folders don't need to be watched for changes.
+     */
+    default boolean isRegionSubFolder(Path folder) {
+        return false;
+    }
+
+    /**
+     * Loads all the given chunks that are part of the specified region at once and puts them into the chunk-cache
+     * (if there is a cache), so that they don't need to be loaded one by one later.<br>
+     * Chunks that are not part of the region are ignored.
+     */
+    default void preloadRegionChunks(int regionX, int regionZ, Collection<Vector2i> chunks) {}
+
     /**
      * Invalidates the complete chunk cache (if there is a cache), so that every chunk has to be reloaded from disk
      */
@@ -89,6 +126,12 @@ public interface World {
      * Cleans up invalid cache-entries to free up memory
      */
     void cleanUpChunkCache();
+
+    /**
+     * Returns the tracker for chunks of this world that failed to load.<br>
+     * Failed chunks are returned as empty chunks until they are successfully loaded again after their back-off time.
+     */
+    ChunkLoadFailures getChunkLoadFailures();
     
     default long getSeed() {
     	return 0;
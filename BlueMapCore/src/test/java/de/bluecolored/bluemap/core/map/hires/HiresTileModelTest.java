@@ -0,0 +1,238 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.hires;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HiresTileModelTest {
+
+    @Test
+    public void testMergePlane() throws IOException {
+        HiresTileModel model = new HiresTileModel(10);
+        for (int x = 0; x < 2; x++) {
+            for (int z = 0; z < 2; z++) {
+                addTopFace(model, x, 64, z);
+            }
+        }
+
+        assertEquals(6, model.mergeFaces());
+        assertEquals(2, model.size());
+
+        JsonObject attributes = writeAttributes(model);
+
+        JsonArray positions = attributes.getAsJsonObject("position").getAsJsonArray("array");
+        for (int i = 0; i < positions.size(); i += 3) {
+            double x = positions.get(i).getAsDouble(), y = positions.get(i + 1).getAsDouble(), z = positions.get(i + 2).getAsDouble();
+            assertEquals(65, y);
+            assertTrue(x == 0 || x == 2, "x: " + x);
+            assertTrue(z == 0 || z == 2, "z: " + z);
+        }
+
+        // the uvs are repeating the texture once per block and are offset to be wrapped by the webapp
+        JsonArray uvs = attributes.getAsJsonObject("uv").getAsJsonArray("array");
+        double minU = Double.MAX_VALUE, maxU = -Double.MAX_VALUE, minV = Double.MAX_VALUE, maxV = -Double.MAX_VALUE;
+        for (int i = 0; i < uvs.size(); i += 2) {
+            double u = uvs.get(i).getAsDouble(), v = uvs.get(i + 1).getAsDouble();
+            minU = Math.min(minU, u); maxU = Math.max(maxU, u);
+            minV = Math.min(minV, v); maxV = Math.max(maxV, v);
+        }
+        assertTrue(minU >= HiresTileModel.WRAPPED_UV_OFFSET, "minU: " + minU);
+        assertTrue(minV >= HiresTileModel.WRAPPED_UV_OFFSET, "minV: " + minV);
+        assertEquals(2, maxU - minU);
+        assertEquals(2, maxV - minV);
+    }
+
+    @Test
+    public void testDifferentFacesNotMerged() {
+        assertNotMerged((model, face) -> model.setMaterialIndex(face, 1));
+        assertNotMerged((model, face) -> model.setSunlight(face, 14));
+        assertNotMerged((model, face) -> model.setBlocklight(face, 3));
+        assertNotMerged((model, face) -> model.setColor(face, 0.5f, 0.5f, 0.5f));
+        assertNotMerged((model, face) -> model.setAOs(face, 0.75f, 0.75f, 0.75f));
+        assertNotMerged((model, face) -> model.setAOs(face, 1f, 0.75f, 1f));
+    }
+
+    @Test
+    public void testOppositeFacesNotMerged() {
+        HiresTileModel model = new HiresTileModel(10);
+        addTopFace(model, 0, 64, 0);
+        addBottomFace(model, 1, 65, 0);
+
+        assertEquals(0, model.mergeFaces());
+        assertEquals(4, model.size());
+    }
+
+    @Test
+    public void testGreedyMeshingDisabled() throws IOException {
+        HiresTileModel expected = createTestModel();
+        expected.sort();
+
+        HiresTileModel disabled = createTestModel();
+        assertEquals(0, HiresModelManager.optimize(disabled, renderSettings(false)));
+        assertArrayEquals(writeModel(expected), writeModel(disabled));
+
+        HiresTileModel enabled = createTestModel();
+        assertTrue(HiresModelManager.optimize(enabled, renderSettings(true)) > 0);
+    }
+
+    private static void assertNotMerged(BiConsumer<HiresTileModel, Integer> modification) {
+        HiresTileModel model = new HiresTileModel(10);
+        addTopFace(model, 0, 64, 0);
+        int face = addTopFace(model, 1, 64, 0);
+        modification.accept(model, face);
+        modification.accept(model, face + 1);
+
+        assertEquals(0, model.mergeFaces());
+        assertEquals(4, model.size());
+    }
+
+    private static HiresTileModel createTestModel() {
+        HiresTileModel model = new HiresTileModel(10);
+        for (int x = 0; x < 4; x++) {
+            for (int z = 0; z < 4; z++) {
+                int face = addTopFace(model, x, 64 + (x / 2), z);
+                model.setMaterialIndex(face, z % 2);
+                model.setMaterialIndex(face + 1, z % 2);
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Adds the (full) upwards facing quad of the block at the given position
+     * @return the index of the first of the two added faces
+     */
+    private static int addTopFace(HiresTileModel model, int x, int y, int z) {
+        return addQuad(model, new double[]{
+                x, y + 1, z + 1,
+                x + 1, y + 1, z + 1,
+                x + 1, y + 1, z,
+                x, y + 1, z
+        });
+    }
+
+    /**
+     * Adds the (full) downwards facing quad of the block at the given position
+     * @return the index of the first of the two added faces
+     */
+    private static int addBottomFace(HiresTileModel model, int x, int y, int z) {
+        return addQuad(model, new double[]{
+                x, y, z,
+                x + 1, y, z,
+                x + 1, y, z + 1,
+                x, y, z + 1
+        });
+    }
+
+    private static int addQuad(HiresTileModel model, double[] c) {
+        int face1 = model.add(2);
+        int face2 = face1 + 1;
+
+        model.setPositions(face1, c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], c[8]);
+        model.setPositions(face2, c[0], c[1], c[2], c[6], c[7], c[8], c[9], c[10], c[11]);
+        model.setUvs(face1, 0, 1, 1, 1, 1, 0);
+        model.setUvs(face2, 0, 1, 1, 0, 0, 0);
+
+        for (int face = face1; face <= face2; face++) {
+            model.setAOs(face, 1f, 1f, 1f);
+            model.setColor(face, 1f, 1f, 1f);
+            model.setSunlight(face, 15);
+            model.setBlocklight(face, 0);
+            model.setMaterialIndex(face, 0);
+        }
+
+        return face1;
+    }
+
+    private static JsonObject writeAttributes(HiresTileModel model) throws IOException {
+        String json = new String(writeModel(model), StandardCharsets.UTF_8);
+        return new JsonParser().parse(json).getAsJsonObject()
+                .getAsJsonObject("tileGeometry")
+                .getAsJsonObject("data")
+                .getAsJsonObject("attributes");
+    }
+
+    private static byte[] writeModel(HiresTileModel model) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.writeBufferGeometryJson(out);
+
+        // the uuid is random for each written model
+        String json = new String(out.toByteArray(), StandardCharsets.UTF_8)
+                .replaceFirst("\"uuid\":\"[^\"]*\"", "\"uuid\":\"\"");
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static RenderSettings renderSettings(boolean greedyMeshing) {
+        return new RenderSettings() {
+            @Override
+            public int getRemoveCavesBelowY() {
+                return Integer.MIN_VALUE;
+            }
+
+            @Override
+            public int getCaveDetectionOceanFloor() {
+                return Integer.MIN_VALUE;
+            }
+
+            @Override
+            public boolean isCaveDetectionUsesBlockLight() {
+                return false;
+            }
+
+            @Override
+            public float getAmbientLight() {
+                return 0;
+            }
+
+            @Override
+            public int getWorldSkyLight() {
+                return 15;
+            }
+
+            @Override
+            public boolean isSaveHiresLayer() {
+                return true;
+            }
+
+            @Override
+            public boolean isGreedyMeshing() {
+                return greedyMeshing;
+            }
+        };
+    }
+
+}
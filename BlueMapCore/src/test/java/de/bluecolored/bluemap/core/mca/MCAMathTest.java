@@ -0,0 +1,102 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MCAMathTest {
+
+    private static final int SIZE = 4096;
+
+    @Test
+    public void testUnpackLongArray() {
+        Random random = new Random(0);
+        for (int bitsPerValue = 1; bitsPerValue <= 16; bitsPerValue++) {
+            int valuesPerLong = 64 / bitsPerValue;
+            long[] data = randomLongs(random, (SIZE + valuesPerLong - 1) / valuesPerLong);
+
+            short[] shorts = new short[SIZE];
+            MCAMath.unpackLongArray(data, bitsPerValue, shorts);
+            for (int i = 0; i < SIZE; i++) {
+                assertEquals(MCAMath.getValueFromLongArray(data, i, bitsPerValue), shorts[i] & 0xFFFF, "bitsPerValue: " + bitsPerValue + ", index: " + i);
+            }
+
+            if (bitsPerValue > 8) continue;
+            byte[] bytes = new byte[SIZE];
+            MCAMath.unpackLongArray(data, bitsPerValue, bytes);
+            for (int i = 0; i < SIZE; i++) {
+                assertEquals(MCAMath.getValueFromLongArray(data, i, bitsPerValue), bytes[i] & 0xFF, "bitsPerValue: " + bitsPerValue + ", index: " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testUnpackLongStream() {
+        Random random = new Random(0);
+        for (int bitsPerValue = 1; bitsPerValue <= 16; bitsPerValue++) {
+            long[] data = randomLongs(random, (SIZE * bitsPerValue + 63) / 64);
+
+            short[] shorts = new short[SIZE];
+            MCAMath.unpackLongStream(data, bitsPerValue, shorts);
+            for (int i = 0; i < SIZE; i++) {
+                assertEquals(MCAMath.getValueFromLongStream(data, i, bitsPerValue), shorts[i] & 0xFFFF, "bitsPerValue: " + bitsPerValue + ", index: " + i);
+            }
+
+            if (bitsPerValue > 8) continue;
+            byte[] bytes = new byte[SIZE];
+            MCAMath.unpackLongStream(data, bitsPerValue, bytes);
+            for (int i = 0; i < SIZE; i++) {
+                assertEquals(MCAMath.getValueFromLongStream(data, i, bitsPerValue), bytes[i] & 0xFF, "bitsPerValue: " + bitsPerValue + ", index: " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testUnpackMissingData() {
+        long[] data = new long[] { -1L };
+
+        short[] array = new short[SIZE];
+        MCAMath.unpackLongArray(data, 5, array);
+        for (int i = 0; i < 12; i++) assertEquals(31, array[i]);
+        for (int i = 12; i < SIZE; i++) assertEquals(0, array[i]);
+
+        short[] stream = new short[SIZE];
+        MCAMath.unpackLongStream(data, 5, stream);
+        for (int i = 0; i < 12; i++) assertEquals(31, stream[i]);
+        assertEquals(15, stream[12]);
+        for (int i = 13; i < SIZE; i++) assertEquals(0, stream[i]);
+    }
+
+    private static long[] randomLongs(Random random, int count) {
+        long[] longs = new long[count];
+        for (int i = 0; i < count; i++) longs[i] = random.nextLong();
+        return longs;
+    }
+
+}
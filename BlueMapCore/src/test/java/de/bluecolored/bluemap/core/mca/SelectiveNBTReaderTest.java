@@ -0,0 +1,118 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import net.querz.nbt.CompoundTag;
+import net.querz.nbt.ListTag;
+import net.querz.nbt.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SelectiveNBTReaderTest {
+
+    @Test
+    public void testSkipsUnfilteredEntries() throws IOException {
+        CompoundTag tag = read(createChunkData(), MCAChunk.CHUNK_DATA_FILTER);
+
+        assertEquals(2975, tag.getInt("DataVersion"));
+        assertEquals("minecraft:full", tag.getString("Status"));
+        assertEquals(77, tag.getLong("InhabitedTime"));
+        assertFalse(tag.containsKey("Entities"));
+        assertFalse(tag.containsKey("PostProcessing"));
+
+        ListTag<?> sections = tag.getListTag("sections");
+        assertEquals(1, sections.size());
+
+        CompoundTag section = (CompoundTag) sections.get(0);
+        assertEquals(-4, section.getByte("Y"));
+        assertArrayEquals(new byte[]{ 9, 8 }, section.getByteArray("SkyLight"));
+        assertFalse(section.containsKey("unused"));
+
+        CompoundTag blockStates = section.getCompoundTag("block_states");
+        assertArrayEquals(new long[]{ 1, 2 }, blockStates.getLongArray("data"));
+        assertEquals(1, blockStates.getListTag("palette").size());
+    }
+
+    @Test
+    public void testReadAll() throws IOException {
+        CompoundTag tag = read(createChunkData(), SelectiveNBTReader.Filter.ALL);
+
+        assertEquals(6, tag.size());
+        assertEquals(2, tag.getListTag("Entities").size());
+        assertTrue(((CompoundTag) tag.getListTag("sections").get(0)).containsKey("unused"));
+    }
+
+    private static CompoundTag read(byte[] data, SelectiveNBTReader.Filter filter) throws IOException {
+        Tag<?> tag = new SelectiveNBTReader(new DataInputStream(new ByteArrayInputStream(data))).read(filter);
+        assertTrue(tag instanceof CompoundTag);
+        return (CompoundTag) tag;
+    }
+
+    private static byte[] createChunkData() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(10); out.writeUTF("");
+
+        out.writeByte(3); out.writeUTF("DataVersion"); out.writeInt(2975);
+
+        out.writeByte(9); out.writeUTF("Entities"); out.writeByte(10); out.writeInt(2);
+        for (int i = 0; i < 2; i++) {
+            out.writeByte(8); out.writeUTF("id"); out.writeUTF("minecraft:zombie");
+            out.writeByte(9); out.writeUTF("Pos"); out.writeByte(6); out.writeInt(3);
+            out.writeDouble(1); out.writeDouble(2); out.writeDouble(3);
+            out.writeByte(11); out.writeUTF("UUID"); out.writeInt(4);
+            out.writeInt(1); out.writeInt(2); out.writeInt(3); out.writeInt(4);
+            out.writeByte(0);
+        }
+
+        out.writeByte(8); out.writeUTF("Status"); out.writeUTF("minecraft:full");
+
+        out.writeByte(9); out.writeUTF("sections"); out.writeByte(10); out.writeInt(1);
+        out.writeByte(1); out.writeUTF("Y"); out.writeByte(-4);
+        out.writeByte(10); out.writeUTF("block_states");
+        out.writeByte(12); out.writeUTF("data"); out.writeInt(2); out.writeLong(1); out.writeLong(2);
+        out.writeByte(9); out.writeUTF("palette"); out.writeByte(10); out.writeInt(1);
+        out.writeByte(8); out.writeUTF("Name"); out.writeUTF("minecraft:stone");
+        out.writeByte(0);
+        out.writeByte(0);
+        out.writeByte(7); out.writeUTF("unused"); out.writeInt(3); out.write(new byte[3]);
+        out.writeByte(7); out.writeUTF("SkyLight"); out.writeInt(2); out.write(new byte[]{ 9, 8 });
+        out.writeByte(0);
+
+        out.writeByte(4); out.writeUTF("InhabitedTime"); out.writeLong(77);
+
+        out.writeByte(9); out.writeUTF("PostProcessing"); out.writeByte(9); out.writeInt(1);
+        out.writeByte(2); out.writeInt(2); out.writeShort(1); out.writeShort(2);
+
+        out.writeByte(0);
+
+        return bytes.toByteArray();
+    }
+
+}
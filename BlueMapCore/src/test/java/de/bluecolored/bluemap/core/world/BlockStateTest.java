@@ -31,6 +31,9 @@
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class BlockStateTest {
@@ -87,6 +90,23 @@ public void testFromString() {
         assertEquals("testVal2", blockState.getProperties().get("testProp2"));
     }
 
+    @Test
+    public void testIntern() {
+        BlockState blockState = new BlockState("someblock", mapOf("testProp", "testVal", "testProp2", "testVal2")).intern();
+        assertSame(blockState, new BlockState("minecraft:someblock", mapOf("testProp2", "testVal2", "testProp", "testVal")).intern());
+        assertNotSame(blockState, new BlockState("someblock", mapOf("testProp", "testVal")).intern());
+
+        assertSame(BlockState.AIR, new BlockState("minecraft:air").intern());
+    }
+
+    @Test
+    public void testId() {
+        BlockState blockState = new BlockState("someblock", mapOf("testProp", "testVal"));
+        assertEquals(blockState.getId(), new BlockState("minecraft:someblock", mapOf("testProp", "testVal")).getId());
+        assertNotEquals(blockState.getId(), new BlockState("someblock", mapOf("testProp", "otherVal")).getId());
+        assertEquals(BlockState.AIR.getId(), new BlockState("minecraft:air").getId());
+    }
+
     private <L, V> Map<L, V> mapOf(L key, V value) {
         Map<L, V> map = new HashMap<>();
         map.put(key, value);
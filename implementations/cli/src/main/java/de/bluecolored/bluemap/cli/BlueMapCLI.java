@@ -92,7 +92,8 @@ public void renderMaps(BlueMapService blueMap, boolean watch, boolean forceRende
         if (watch) {
             for (BmMap map : maps.values()) {
                 try {
-                    RegionFileWatchService watcher = new RegionFileWatchService(renderManager, map, true);
+                    RegionFileWatchService watcher = new RegionFileWatchService(renderManager, map, true,
+                            blueMap.getConfigs().getCoreConfig().resolveFileWatcherDelay());
                     watcher.start();
                     regionFileWatchServices.add(watcher);
                 } catch (IOException ex) {